@@ -0,0 +1,257 @@
+package com.tomandersen.interceptors;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.tomandersen.util.JsonByteScanner;
+import com.tomandersen.util.LogUtils;
+import com.tomandersen.util.ReloadableRules;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.interceptor.Interceptor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @Author TomAndersen
+ * @Date 2026/10/19
+ * @Version
+ * @Description: 字段投影拦截器,在采集端直接裁剪下游不使用的JSON字段,减少Channel/Kafka/HDFS中传输的字节数.
+ * <p>
+ * 通过excludes(黑名单)或includes(白名单)配置以逗号分隔的JSON路径,路径中的数组是透明的,
+ * 例如"et.kv.content"会作用于et数组中每个元素的kv.content字段.
+ * 使用{@link JsonByteScanner}在原始字节上单次扫描并输出紧凑的JSON,不构建DOM.
+ * 事件日志的"timestamp|"前缀会原样保留,格式错误或根对象之后还有非空白内容的Event原样放行,
+ * 交由{@link LogETLInterceptor}处理.
+ * 路径列表支持通过rulesFile热加载,参见{@link ReloadableRules}.
+ * <p>
+ * 配置示例:
+ * <pre>
+ *     a1.sources.r1.interceptors.i2.type = com.tomandersen.interceptors.FieldProjectionInterceptor$Builder
+ *     a1.sources.r1.interceptors.i2.excludes = cm.g,cm.sv,et.kv.content
+ * </pre>
+ */
+public class FieldProjectionInterceptor implements Interceptor {
+    // 配置项
+    public static final String INCLUDES_KEY = "includes";
+    public static final String EXCLUDES_KEY = "excludes";
+
+    // 当前生效的投影规则
+    private final ReloadableRules<Rules> rules;
+
+    public FieldProjectionInterceptor(List<String> paths, boolean include) {
+        this(ReloadableRules.of(new Rules(PathNode.build(paths), include)));
+    }
+
+    public FieldProjectionInterceptor(ReloadableRules<Rules> rules) {
+        this.rules = rules;
+    }
+
+    // 开始监听规则文件
+    @Override
+    public void initialize() {
+        rules.start();
+    }
+
+    // 单个Event处理
+    @Override
+    public Event intercept(Event event) {
+        // 1.获取Body,确定JSON本体的起始位置
+        byte[] body = event.getBody();
+        if (body == null || body.length == 0) return event;
+        int start = LogUtils.parseServerTime(body) >= 0 ? LogUtils.SERVER_TIME_LENGTH + 1 : 0;
+
+        // 2.单次扫描输出投影后的JSON,输出长度不会超过输入长度
+        // 每次调用使用独立的扫描器和缓冲区,保证多个Source线程并发调用时的安全
+        Rules current = rules.get();
+        JsonByteScanner scanner = new JsonByteScanner().reset(body, start, body.length);
+        Output out = new Output(body.length);
+        out.write(body, 0, start);
+        try {
+            if (!scanner.enterObject()) return event;
+            writeObject(scanner, body, current.root, current.include, out);
+            // 根对象之后只允许空白字符,否则(尾随数据、拼接的多条记录)原样放行,避免丢弃字节
+            scanner.skipWhitespace();
+            if (scanner.position() != body.length) return event;
+        } catch (IllegalArgumentException e) {
+            // 格式错误则原样放行
+            return event;
+        }
+
+        // 3.替换Body
+        if (out.size != body.length) {
+            event.setBody(Arrays.copyOf(out.buf, out.size));
+        }
+        return event;
+    }
+
+    // 输出当前对象(调用前已消费'{'),node为当前对象对应的路径节点
+    private void writeObject(JsonByteScanner scanner, byte[] body, PathNode node, boolean include, Output out) {
+        out.write('{');
+        boolean first = true;
+        while (scanner.nextMember()) {
+            PathNode child = node.child(scanner);
+            boolean keep;
+            if (include) keep = child != null;
+            else keep = child == null || !child.terminal;
+            if (!keep) {
+                scanner.skipValue();
+                continue;
+            }
+            if (!first) out.write(',');
+            first = false;
+            // 输出带引号的原始Key
+            out.write(body, scanner.keyStart() - 1, scanner.keyEnd() - scanner.keyStart() + 2);
+            out.write(':');
+            // 终止节点(白名单命中)或无子路径时直接复制整个Value
+            if (child == null || child.terminal) {
+                copyValue(scanner, body, out);
+            } else {
+                writeValue(scanner, body, child, include, out);
+            }
+        }
+        out.write('}');
+    }
+
+    // 输出需要继续投影的Value,对象递归处理,数组对每个元素递归处理,其余类型直接复制
+    private void writeValue(JsonByteScanner scanner, byte[] body, PathNode node, boolean include, Output out) {
+        if (scanner.enterObject()) {
+            writeObject(scanner, body, node, include, out);
+        } else if (scanner.enterArray()) {
+            out.write('[');
+            boolean first = true;
+            while (scanner.nextElement()) {
+                if (!first) out.write(',');
+                first = false;
+                writeValue(scanner, body, node, include, out);
+            }
+            out.write(']');
+        } else {
+            copyValue(scanner, body, out);
+        }
+    }
+
+    private void copyValue(JsonByteScanner scanner, byte[] body, Output out) {
+        scanner.skipValue();
+        out.write(body, scanner.valueStart(), scanner.valueEnd() - scanner.valueStart());
+    }
+
+    // 批量Event处理
+    @Override
+    public List<Event> intercept(final List<Event> events) {
+        for (Event event : events) {
+            intercept(event);
+        }
+        return events;
+    }
+
+    // 停止监听规则文件
+    @Override
+    public void close() {
+        rules.close();
+    }
+
+    // 编译后的不可变投影规则
+    public static final class Rules {
+        // 由配置路径构建的前缀树根节点
+        private final PathNode root;
+        // true为白名单模式,false为黑名单模式
+        private final boolean include;
+
+        Rules(PathNode root, boolean include) {
+            this.root = root;
+            this.include = include;
+        }
+
+        // 根据配置编译规则
+        static Rules compile(Context context) {
+            String includes = context.getString(INCLUDES_KEY);
+            String excludes = context.getString(EXCLUDES_KEY);
+            Preconditions.checkArgument(Strings.isNullOrEmpty(includes) != Strings.isNullOrEmpty(excludes),
+                    "Exactly one of " + INCLUDES_KEY + " and " + EXCLUDES_KEY + " must be configured");
+            boolean include = !Strings.isNullOrEmpty(includes);
+            List<String> paths = new ArrayList<>();
+            for (String path : (include ? includes : excludes).split(",")) {
+                if (!path.trim().isEmpty()) paths.add(path.trim());
+            }
+            return new Rules(PathNode.build(paths), include);
+        }
+    }
+
+    // JSON路径前缀树节点,构建完成后不再修改
+    static class PathNode {
+        private byte[][] keys = new byte[0][];
+        private PathNode[] children = new PathNode[0];
+        // 是否为配置路径的终点
+        private boolean terminal = false;
+
+        static PathNode build(List<String> paths) {
+            PathNode root = new PathNode();
+            for (String path : paths) {
+                PathNode node = root;
+                for (String name : path.split("\\.")) {
+                    node = node.getOrAdd(name.getBytes(StandardCharsets.UTF_8));
+                }
+                node.terminal = true;
+            }
+            return root;
+        }
+
+        private PathNode getOrAdd(byte[] key) {
+            for (int i = 0; i < keys.length; i++) {
+                if (Arrays.equals(keys[i], key)) return children[i];
+            }
+            keys = Arrays.copyOf(keys, keys.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            keys[keys.length - 1] = key;
+            children[children.length - 1] = new PathNode();
+            return children[children.length - 1];
+        }
+
+        // 查找与扫描器当前Key匹配的子节点,不存在则返回null
+        PathNode child(JsonByteScanner scanner) {
+            for (int i = 0; i < keys.length; i++) {
+                if (scanner.keyEquals(keys[i])) return children[i];
+            }
+            return null;
+        }
+    }
+
+    // 定长输出缓冲区
+    private static class Output {
+        private final byte[] buf;
+        private int size = 0;
+
+        Output(int capacity) {
+            this.buf = new byte[capacity];
+        }
+
+        void write(int b) {
+            buf[size++] = (byte) b;
+        }
+
+        void write(byte[] src, int offset, int length) {
+            System.arraycopy(src, offset, buf, size, length);
+            size += length;
+        }
+    }
+
+    public static class Builder implements Interceptor.Builder {
+        // 声明配置信息
+        private Context context;
+
+        // 获取配置信息
+        @Override
+        public void configure(Context context) {
+            this.context = context;
+        }
+
+        // 用于创建Interceptor对象
+        @Override
+        public Interceptor build() {
+            return new FieldProjectionInterceptor(ReloadableRules.create(context, Rules::compile));
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.tomandersen.interceptors;
+
+import com.google.common.base.Strings;
+import com.tomandersen.util.JsonByteScanner;
+import com.tomandersen.util.LogUtils;
+import com.tomandersen.util.ReloadableRules;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.interceptor.Interceptor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Author TomAndersen
+ * @Date 2026/10/19
+ * @Version
+ * @Description: 迟到/时钟偏移事件标记拦截器.
+ * <p>
+ * 比较事件日志中客户端时间cm.t与日志前缀中的服务器时间,当客户端时间落后超过lateWindow秒,
+ * 或超前超过futureWindow秒时,向Header中写入标记(默认"late=true"),并在配置了lateTopic时覆盖topic Header,
+ * 使迟到数据可以单独攒批写入并集中合并,避免在历史Hive分区中产生大量小文件.
+ * <p>
+ * cm.t只在Body的前maxScanBytes个字节内查找,找不到时视为正常事件.
+ * 应放在{@link LogTypeInterceptor}之后,以便覆盖其设置的topic.
+ * 以上参数均支持通过rulesFile热加载,参见{@link ReloadableRules}.
+ * <p>
+ * 配置示例:
+ * <pre>
+ *     a1.sources.r1.interceptors.i3.type = com.tomandersen.interceptors.LateEventInterceptor$Builder
+ *     a1.sources.r1.interceptors.i3.lateWindow = 3600
+ *     a1.sources.r1.interceptors.i3.lateTopic = topic_event_late
+ * </pre>
+ */
+public class LateEventInterceptor implements Interceptor {
+    // 配置项以及默认值
+    public static final String LATE_WINDOW_KEY = "lateWindow";
+    public static final long DEFAULT_LATE_WINDOW = 3600;
+    public static final String FUTURE_WINDOW_KEY = "futureWindow";
+    public static final long DEFAULT_FUTURE_WINDOW = 600;
+    public static final String MAX_SCAN_BYTES_KEY = "maxScanBytes";
+    public static final int DEFAULT_MAX_SCAN_BYTES = 2048;
+    public static final String HEADER_KEY = "header";
+    public static final String DEFAULT_HEADER = "late";
+    public static final String LATE_TOPIC_KEY = "lateTopic";
+    public static final String TOPIC_HEADER = "topic";
+
+    private static final byte[] KEY_CM = "cm".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] KEY_T = "t".getBytes(StandardCharsets.UTF_8);
+
+    // 当前生效的规则
+    private final ReloadableRules<Rules> rules;
+
+    public LateEventInterceptor(long lateWindowMills, long futureWindowMills, int maxScanBytes,
+                                String header, String lateTopic) {
+        this(ReloadableRules.of(new Rules(lateWindowMills, futureWindowMills, maxScanBytes, header, lateTopic)));
+    }
+
+    public LateEventInterceptor(ReloadableRules<Rules> rules) {
+        this.rules = rules;
+    }
+
+    // 开始监听规则文件
+    @Override
+    public void initialize() {
+        rules.start();
+    }
+
+    // 单个Event处理
+    @Override
+    public Event intercept(Event event) {
+        // 1.获取服务器时间,非事件日志直接放行
+        byte[] body = event.getBody();
+        long serverTime = LogUtils.parseServerTime(body);
+        if (serverTime < 0) return event;
+
+        // 2.在有限的字节范围内查找客户端时间
+        Rules current = rules.get();
+        long clientTime = findClientTime(body, current.maxScanBytes);
+        if (clientTime < 0) return event;
+
+        // 3.超出窗口则打标记
+        if (serverTime - clientTime > current.lateWindowMills || clientTime - serverTime > current.futureWindowMills) {
+            Map<String, String> headers = event.getHeaders();
+            headers.put(current.header, "true");
+            if (current.lateTopic != null) headers.put(TOPIC_HEADER, current.lateTopic);
+        }
+        return event;
+    }
+
+    // 扫描cm.t,超出扫描范围或格式错误时返回-1
+    private long findClientTime(byte[] body, int maxScanBytes) {
+        int limit = Math.min(body.length, LogUtils.SERVER_TIME_LENGTH + 1 + maxScanBytes);
+        JsonByteScanner scanner = new JsonByteScanner().reset(body, LogUtils.SERVER_TIME_LENGTH + 1, limit);
+        try {
+            if (!scanner.enterObject()) return -1;
+            while (scanner.nextMember()) {
+                if (!scanner.keyEquals(KEY_CM)) {
+                    scanner.skipValue();
+                    continue;
+                }
+                if (!scanner.enterObject()) return -1;
+                while (scanner.nextMember()) {
+                    if (scanner.keyEquals(KEY_T)) return scanner.readDigits();
+                    scanner.skipValue();
+                }
+                return -1;
+            }
+        } catch (IllegalArgumentException e) {
+            // 超出扫描范围或者格式错误
+        }
+        return -1;
+    }
+
+    // 批量Event处理
+    @Override
+    public List<Event> intercept(final List<Event> events) {
+        for (Event event : events) {
+            intercept(event);
+        }
+        return events;
+    }
+
+    // 停止监听规则文件
+    @Override
+    public void close() {
+        rules.close();
+    }
+
+    // 编译后的不可变规则
+    public static final class Rules {
+        private final long lateWindowMills;
+        private final long futureWindowMills;
+        private final int maxScanBytes;
+        private final String header;
+        private final String lateTopic;
+
+        Rules(long lateWindowMills, long futureWindowMills, int maxScanBytes, String header, String lateTopic) {
+            this.lateWindowMills = lateWindowMills;
+            this.futureWindowMills = futureWindowMills;
+            this.maxScanBytes = maxScanBytes;
+            this.header = header;
+            this.lateTopic = lateTopic;
+        }
+
+        // 根据配置编译规则
+        static Rules compile(Context context) {
+            String lateTopic = context.getString(LATE_TOPIC_KEY);
+            return new Rules(
+                    context.getLong(LATE_WINDOW_KEY, DEFAULT_LATE_WINDOW) * 1000,
+                    context.getLong(FUTURE_WINDOW_KEY, DEFAULT_FUTURE_WINDOW) * 1000,
+                    context.getInteger(MAX_SCAN_BYTES_KEY, DEFAULT_MAX_SCAN_BYTES),
+                    context.getString(HEADER_KEY, DEFAULT_HEADER),
+                    Strings.isNullOrEmpty(lateTopic) ? null : lateTopic);
+        }
+    }
+
+    public static class Builder implements Interceptor.Builder {
+        // 声明配置信息
+        private Context context;
+
+        // 获取配置信息
+        @Override
+        public void configure(Context context) {
+            this.context = context;
+        }
+
+        // 用于创建Interceptor对象
+        @Override
+        public Interceptor build() {
+            return new LateEventInterceptor(ReloadableRules.create(context, Rules::compile));
+        }
+    }
+}
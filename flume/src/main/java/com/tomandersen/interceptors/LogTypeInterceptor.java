@@ -1,5 +1,6 @@
 package com.tomandersen.interceptors;
 
+import com.tomandersen.util.ReloadableRules;
 import org.apache.flume.Context;
 import org.apache.flume.Event;
 import org.apache.flume.interceptor.Interceptor;
@@ -13,14 +14,32 @@ import java.util.Map;
  * @Author TomAndersen
  * @Date 2020/3/7
  * @Version
- * @Description
+ * @Description: 根据日志类型设置topic Header.
+ * 启动日志和事件日志对应的topic可以通过startTopic/eventTopic配置,并支持通过rulesFile热加载,
+ * 参见{@link ReloadableRules}.
  */
 public class LogTypeInterceptor implements Interceptor {
+    // 配置项以及默认值
+    public static final String START_TOPIC_KEY = "startTopic";
+    public static final String DEFAULT_START_TOPIC = "topic_start";
+    public static final String EVENT_TOPIC_KEY = "eventTopic";
+    public static final String DEFAULT_EVENT_TOPIC = "topic_event";
 
-    // 初始化时不做操作
+    // 当前生效的路由规则
+    private final ReloadableRules<Rules> rules;
+
+    public LogTypeInterceptor() {
+        this(ReloadableRules.of(new Rules(DEFAULT_START_TOPIC, DEFAULT_EVENT_TOPIC)));
+    }
+
+    public LogTypeInterceptor(ReloadableRules<Rules> rules) {
+        this.rules = rules;
+    }
+
+    // 初始化时开始监听规则文件
     @Override
     public void initialize() {
-        // Do nothing
+        rules.start();
     }
 
     // 单个Event拦截
@@ -35,9 +54,10 @@ public class LogTypeInterceptor implements Interceptor {
 
         // 2.根据Body中的内容向Header中插入不同的键值对
         // 如果包含"start"关键字则表明是启动日志,否则判定为事件日志
+        Rules current = rules.get();
         if (bodyStr.contains("start")) {
-            headers.put("topic", "topic_start");
-        } else headers.put("topic", "topic_event");
+            headers.put("topic", current.startTopic);
+        } else headers.put("topic", current.eventTopic);
 
         // 3.返回处理之后的Event
         return event;
@@ -61,10 +81,27 @@ public class LogTypeInterceptor implements Interceptor {
     }
 
 
-    // 关闭时不做操作
+    // 关闭时停止监听规则文件
     @Override
     public void close() {
-        // Do nothing
+        rules.close();
+    }
+
+    // 编译后的不可变路由规则
+    public static final class Rules {
+        private final String startTopic;
+        private final String eventTopic;
+
+        Rules(String startTopic, String eventTopic) {
+            this.startTopic = startTopic;
+            this.eventTopic = eventTopic;
+        }
+
+        // 根据配置编译规则
+        static Rules compile(Context context) {
+            return new Rules(context.getString(START_TOPIC_KEY, DEFAULT_START_TOPIC),
+                    context.getString(EVENT_TOPIC_KEY, DEFAULT_EVENT_TOPIC));
+        }
     }
 
     // 创建静态内部类实现Interceptor.Builder接口
@@ -82,7 +119,7 @@ public class LogTypeInterceptor implements Interceptor {
         // 用于生成Interceptor
         @Override
         public Interceptor build() {
-            return new LogTypeInterceptor();
+            return new LogTypeInterceptor(ReloadableRules.create(context, Rules::compile));
         }
     }
 }
@@ -0,0 +1,240 @@
+package com.tomandersen.sinks;
+
+import com.google.common.base.Preconditions;
+import org.apache.flume.Context;
+import org.apache.flume.EventDeliveryException;
+import org.apache.flume.Sink;
+import org.apache.flume.Sink.Status;
+import org.apache.flume.conf.Configurable;
+import org.apache.flume.sink.AbstractSinkProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @Author TomAndersen
+ * @Date 2026/10/19
+ * @Version
+ * @Description: 基于延迟感知的负载均衡SinkProcessor.
+ * <p>
+ * 内置的load_balance处理器只支持轮询或随机选择,下游Agent变慢时仍会持续向其发送,直到失败堆积.
+ * 本处理器为每个Sink维护process()耗时以及失败率的指数加权移动平均(EWMA),
+ * 每次随机选取两个可用Sink(power-of-two-choices),选择得分较低者处理,得分为延迟乘以(1+失败率惩罚).
+ * 长时间未被选中的Sink,其延迟按照decayTime毫秒的半衰期衰减,使变慢后恢复的Sink能够重新获得流量.
+ * 当某个Sink的平均延迟超过其他可用Sink平均值的outlierFactor倍,或失败率超过maxErrorRate时,
+ * 将其暂时剔除ejectionTime毫秒,连续剔除时剔除时长翻倍,最长为maxEjectionTime毫秒.
+ * 所有Sink都被剔除时忽略剔除状态,保证数据仍能继续发送.
+ * <p>
+ * 配置示例:
+ * <pre>
+ *     a1.sinkgroups.g1.sinks = k1 k2 k3
+ *     a1.sinkgroups.g1.processor.type = com.tomandersen.sinks.LatencyAwareSinkProcessor
+ *     a1.sinkgroups.g1.processor.alpha = 0.2
+ *     a1.sinkgroups.g1.processor.outlierFactor = 3
+ *     a1.sinkgroups.g1.processor.ejectionTime = 30000
+ * </pre>
+ * SinkRunner只会在单个线程中调用process(),因此内部状态无需同步.
+ */
+public class LatencyAwareSinkProcessor extends AbstractSinkProcessor implements Configurable {
+    private static final Logger logger = LoggerFactory.getLogger(LatencyAwareSinkProcessor.class);
+
+    // 配置项以及默认值
+    public static final String ALPHA_KEY = "alpha";
+    public static final double DEFAULT_ALPHA = 0.2;
+    public static final String OUTLIER_FACTOR_KEY = "outlierFactor";
+    public static final double DEFAULT_OUTLIER_FACTOR = 3.0;
+    public static final String MAX_ERROR_RATE_KEY = "maxErrorRate";
+    public static final double DEFAULT_MAX_ERROR_RATE = 0.5;
+    public static final String ERROR_PENALTY_KEY = "errorPenalty";
+    public static final double DEFAULT_ERROR_PENALTY = 10.0;
+    public static final String MIN_SAMPLES_KEY = "minSamples";
+    public static final int DEFAULT_MIN_SAMPLES = 20;
+    public static final String EJECTION_TIME_KEY = "ejectionTime";
+    public static final long DEFAULT_EJECTION_TIME = 30000;
+    public static final String MAX_EJECTION_TIME_KEY = "maxEjectionTime";
+    public static final long DEFAULT_MAX_EJECTION_TIME = 300000;
+    public static final String DECAY_TIME_KEY = "decayTime";
+    public static final long DEFAULT_DECAY_TIME = 10000;
+
+    private double alpha = DEFAULT_ALPHA;
+    private double outlierFactor = DEFAULT_OUTLIER_FACTOR;
+    private double maxErrorRate = DEFAULT_MAX_ERROR_RATE;
+    private double errorPenalty = DEFAULT_ERROR_PENALTY;
+    private int minSamples = DEFAULT_MIN_SAMPLES;
+    private long ejectionMills = DEFAULT_EJECTION_TIME;
+    private long maxEjectionMills = DEFAULT_MAX_EJECTION_TIME;
+    private long decayMills = DEFAULT_DECAY_TIME;
+
+    // 每个Sink对应的统计信息,与getSinks()顺序一致
+    private List<SinkStats> stats = new ArrayList<>();
+
+    @Override
+    public void setSinks(List<Sink> sinks) {
+        super.setSinks(sinks);
+        List<SinkStats> newStats = new ArrayList<>(sinks.size());
+        for (Sink sink : sinks) {
+            newStats.add(new SinkStats(sink));
+        }
+        this.stats = newStats;
+    }
+
+    @Override
+    public void configure(Context context) {
+        alpha = context.getString(ALPHA_KEY) == null ? DEFAULT_ALPHA
+                : Double.parseDouble(context.getString(ALPHA_KEY));
+        Preconditions.checkArgument(alpha > 0 && alpha <= 1, ALPHA_KEY + " must be in (0, 1]");
+        outlierFactor = context.getString(OUTLIER_FACTOR_KEY) == null ? DEFAULT_OUTLIER_FACTOR
+                : Double.parseDouble(context.getString(OUTLIER_FACTOR_KEY));
+        maxErrorRate = context.getString(MAX_ERROR_RATE_KEY) == null ? DEFAULT_MAX_ERROR_RATE
+                : Double.parseDouble(context.getString(MAX_ERROR_RATE_KEY));
+        errorPenalty = context.getString(ERROR_PENALTY_KEY) == null ? DEFAULT_ERROR_PENALTY
+                : Double.parseDouble(context.getString(ERROR_PENALTY_KEY));
+        minSamples = context.getInteger(MIN_SAMPLES_KEY, DEFAULT_MIN_SAMPLES);
+        ejectionMills = context.getLong(EJECTION_TIME_KEY, DEFAULT_EJECTION_TIME);
+        maxEjectionMills = context.getLong(MAX_EJECTION_TIME_KEY, DEFAULT_MAX_EJECTION_TIME);
+        decayMills = context.getLong(DECAY_TIME_KEY, DEFAULT_DECAY_TIME);
+        Preconditions.checkArgument(decayMills > 0, DECAY_TIME_KEY + " must be greater than 0");
+    }
+
+    @Override
+    public Status process() throws EventDeliveryException {
+        long now = System.currentTimeMillis();
+        List<SinkStats> candidates = available(now);
+
+        // 1.按照power-of-two-choices选出首选Sink
+        SinkStats first = choose(candidates, now);
+        Status status = tryProcess(first);
+        if (status != null) return status;
+
+        // 2.首选Sink失败时,按得分从低到高依次尝试其余Sink
+        candidates.remove(first);
+        while (!candidates.isEmpty()) {
+            SinkStats next = best(candidates, now);
+            candidates.remove(next);
+            status = tryProcess(next);
+            if (status != null) return status;
+        }
+        throw new EventDeliveryException("All sinks failed to process, nothing left to failover to");
+    }
+
+    // 调用Sink处理并记录耗时,失败时返回null
+    private Status tryProcess(SinkStats sinkStats) {
+        sinkStats.lastUsed = System.currentTimeMillis();
+        long start = System.nanoTime();
+        try {
+            Status status = sinkStats.sink.process();
+            // BACKOFF表示Channel中暂无数据,与Sink本身的快慢无关,不计入延迟统计
+            if (status == Status.READY) sinkStats.recordSuccess(System.nanoTime() - start);
+            return status;
+        } catch (Exception e) {
+            sinkStats.recordFailure(System.nanoTime() - start);
+            logger.warn("Sink " + sinkStats.sink.getName() + " failed to process, trying another sink", e);
+            return null;
+        } finally {
+            checkOutlier(sinkStats, System.currentTimeMillis());
+        }
+    }
+
+    // 返回当前未被剔除的Sink,全部被剔除时返回所有Sink
+    private List<SinkStats> available(long now) {
+        List<SinkStats> result = new ArrayList<>(stats.size());
+        for (SinkStats s : stats) {
+            if (s.ejectedUntil <= now) result.add(s);
+        }
+        if (result.isEmpty()) result.addAll(stats);
+        return result;
+    }
+
+    // 随机选取两个Sink,返回得分较低者
+    private SinkStats choose(List<SinkStats> candidates, long now) {
+        int size = candidates.size();
+        if (size == 1) return candidates.get(0);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(size);
+        int j = random.nextInt(size - 1);
+        if (j >= i) j++;
+        SinkStats a = candidates.get(i);
+        SinkStats b = candidates.get(j);
+        return score(a, now) <= score(b, now) ? a : b;
+    }
+
+    private SinkStats best(List<SinkStats> candidates, long now) {
+        SinkStats best = candidates.get(0);
+        for (SinkStats s : candidates) {
+            if (score(s, now) < score(best, now)) best = s;
+        }
+        return best;
+    }
+
+    // 得分:按空闲时间衰减后的平均延迟乘以失败率惩罚,新加入的Sink初始得分为0以便尽快获得样本
+    private double score(SinkStats s, long now) {
+        double decay = Math.pow(0.5, (double) (now - s.lastUsed) / decayMills);
+        return s.latencyNanos * decay * (1 + errorPenalty * s.errorRate);
+    }
+
+    // 判断Sink是否为离群点,是则将其剔除一段时间
+    private void checkOutlier(SinkStats s, long now) {
+        if (s.samples < minSamples || stats.size() < 2) return;
+        boolean outlier = s.errorRate > maxErrorRate;
+        if (!outlier) {
+            // 与其他可用Sink的平均延迟进行比较
+            double sum = 0;
+            int count = 0;
+            for (SinkStats other : stats) {
+                if (other == s || other.ejectedUntil > now || other.samples < minSamples) continue;
+                sum += other.latencyNanos;
+                count++;
+            }
+            outlier = count > 0 && s.latencyNanos > outlierFactor * (sum / count);
+        }
+        if (outlier) {
+            long duration = Math.min(maxEjectionMills, ejectionMills << Math.min(s.ejections, 16));
+            s.ejectedUntil = now + duration;
+            s.ejections++;
+            // 剔除后重置统计信息,恢复时重新采样
+            s.samples = 0;
+            s.errorRate = 0;
+            logger.warn("Ejecting sink " + s.sink.getName() + " for " + duration + "ms");
+        } else if (s.ejectedUntil <= now && s.samples >= minSamples) {
+            // 恢复后表现正常则清空连续剔除次数
+            s.ejections = 0;
+        }
+    }
+
+    // 单个Sink的统计信息
+    private class SinkStats {
+        private final Sink sink;
+        // process()耗时的EWMA(纳秒)
+        private double latencyNanos = 0;
+        // 失败率的EWMA
+        private double errorRate = 0;
+        // 样本数,只在剔除时清零,健康的Sink会一直累加,因此使用long避免溢出后被排除在离群检测之外
+        private long samples = 0;
+        // 剔除截止时间
+        private long ejectedUntil = 0;
+        // 连续剔除次数
+        private int ejections = 0;
+        // 最近一次被选中的时间
+        private long lastUsed = System.currentTimeMillis();
+
+        SinkStats(Sink sink) {
+            this.sink = sink;
+        }
+
+        void recordSuccess(long nanos) {
+            latencyNanos = samples == 0 ? nanos : latencyNanos + alpha * (nanos - latencyNanos);
+            errorRate = errorRate * (1 - alpha);
+            samples++;
+        }
+
+        void recordFailure(long nanos) {
+            // 失败的耗时同样计入延迟,超时失败通常意味着下游很慢
+            latencyNanos = samples == 0 ? nanos : latencyNanos + alpha * (nanos - latencyNanos);
+            errorRate = errorRate + alpha * (1 - errorRate);
+            samples++;
+        }
+    }
+}
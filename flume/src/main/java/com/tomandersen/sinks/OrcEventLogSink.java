@@ -0,0 +1,600 @@
+package com.tomandersen.sinks;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.tomandersen.util.JsonByteScanner;
+import com.tomandersen.util.LogUtils;
+import org.apache.flume.*;
+import org.apache.flume.conf.Configurable;
+import org.apache.flume.instrumentation.SinkCounter;
+import org.apache.flume.sink.AbstractSink;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.orc.CompressionKind;
+import org.apache.orc.OrcFile;
+import org.apache.orc.TypeDescription;
+import org.apache.orc.Writer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * @Author TomAndersen
+ * @Date 2026/10/19
+ * @Version
+ * @Description: 将事件日志(timestamp|json)直接写成ORC文件的Sink,省去每晚使用Hive INSERT转换文本的作业.
+ * <p>
+ * 按照日志前缀中的服务器时间将Event写入对应的天分区目录(默认为"dt=yyyy-MM-dd"),
+ * 公共字段cm中的各个字段通过{@link JsonByteScanner}流式解析为独立的列,ap字段和原始et数组也各占一列.
+ * 文件先以"_"开头、".tmp"结尾的名称写入(Hive会忽略此类文件),当文件写入时长达到rollInterval
+ * 或未压缩数据量达到rollStripes个Stripe时关闭并重命名.
+ * <p>
+ * 一个批次的行先保存在该分区的VectorizedRowBatch中(容量为batchSize),整个批次解析完成后才交给ORC Writer,
+ * 因此在此之前失败时只需丢弃内存中的行,文件不受影响.
+ * 已提交的数据只有写入中间Footer(同步)后才能在Writer失败时保留:ORC Writer自行写出完整Stripe后的下一次提交
+ * 立即同步,此时只追加Footer;距上次同步超过syncInterval秒时也会同步;未同步的行超过maxUnsyncedRows时
+ * 则在提交Channel事务之前同步,同步失败时事务回滚.后两种同步会提前结束当前Stripe,
+ * 因此二者越小丢失范围越小,但每个文件的Stripe越多越小,影响ORC及Hive的读取性能.
+ * <p>
+ * ORC写入、同步或关闭失败时Writer状态未知,放弃该Writer:只保留文件中最近一次同步位置之前的数据
+ * (这部分本身就是完整的ORC文件)并以正式文件名发布,之后的行不会出现在任何文件中.
+ * 回滚的批次不会出现在发布的文件中(即使本批次已在提交前同步,也回退到本批次之前的同步位置),不会重复写入.
+ * <p>
+ * 投递语义:Event在交给ORC Writer后、同步前即从Channel提交,因此Writer失败时最近一次同步之后已提交的行会丢失,
+ * 丢失范围不超过syncInterval秒且不超过maxUnsyncedRows行(默认30秒、50000行).
+ * maxUnsyncedRows设为0时每个批次都在提交前同步,不会丢失已提交的数据,代价是每个批次一个Stripe.
+ * <p>
+ * 路径通过Hadoop FileSystem API解析,因此既可以写HDFS(hdfs://...),也可以直接写本地文件系统(file:///...)进行测试.
+ * <p>
+ * 配置示例:
+ * <pre>
+ *     a1.sinks.k1.type = com.tomandersen.sinks.OrcEventLogSink
+ *     a1.sinks.k1.path = hdfs://hadoop101:9000/origin_data/gmall/log/topic_event
+ *     a1.sinks.k1.filePrefix = events-hadoop101
+ *     a1.sinks.k1.batchSize = 1000
+ *     a1.sinks.k1.rollInterval = 3600
+ *     a1.sinks.k1.stripeSize = 67108864
+ *     a1.sinks.k1.rollStripes = 4
+ *     # Writer失败时最多丢失syncInterval秒内或maxUnsyncedRows行已从Channel提交的数据,
+ *     # maxUnsyncedRows = 0表示每个批次提交前同步,不丢失数据
+ *     a1.sinks.k1.syncInterval = 30
+ *     a1.sinks.k1.maxUnsyncedRows = 50000
+ * </pre>
+ */
+public class OrcEventLogSink extends AbstractSink implements Configurable {
+    private static final Logger logger = LoggerFactory.getLogger(OrcEventLogSink.class);
+
+    // 配置项以及默认值
+    public static final String PATH_KEY = "path";
+    public static final String FILE_PREFIX_KEY = "filePrefix";
+    public static final String DEFAULT_FILE_PREFIX = "events";
+    public static final String BATCH_SIZE_KEY = "batchSize";
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final String ROLL_INTERVAL_KEY = "rollInterval";
+    public static final long DEFAULT_ROLL_INTERVAL = 3600;
+    public static final String STRIPE_SIZE_KEY = "stripeSize";
+    public static final long DEFAULT_STRIPE_SIZE = 64L * 1024 * 1024;
+    public static final String ROLL_STRIPES_KEY = "rollStripes";
+    public static final int DEFAULT_ROLL_STRIPES = 4;
+    public static final String COMPRESS_KEY = "compress";
+    public static final String DEFAULT_COMPRESS = "ZLIB";
+    public static final String PARTITION_FORMAT_KEY = "partitionFormat";
+    public static final String DEFAULT_PARTITION_FORMAT = "'dt='yyyy-MM-dd";
+    public static final String TIME_ZONE_KEY = "timeZone";
+    public static final String CM_FIELDS_KEY = "cmFields";
+    public static final String DEFAULT_CM_FIELDS = "mid,uid,vc,vn,l,sr,os,ar,md,ba,sv,g,hw,t,nw,ln,la";
+    // 提交后距上次同步超过syncInterval秒时同步,Writer失败时此时间内已提交的行会丢失
+    public static final String SYNC_INTERVAL_KEY = "syncInterval";
+    public static final long DEFAULT_SYNC_INTERVAL = 30;
+    // 未同步的行超过maxUnsyncedRows时在提交Channel事务之前同步,0表示每个批次都在提交前同步(不丢失已提交的数据)
+    public static final String MAX_UNSYNCED_ROWS_KEY = "maxUnsyncedRows";
+    public static final long DEFAULT_MAX_UNSYNCED_ROWS = 50000;
+
+    // 文件写入过程中的前缀和后缀
+    private static final String IN_USE_PREFIX = "_";
+    private static final String IN_USE_SUFFIX = ".tmp";
+    private static final String FILE_SUFFIX = ".orc";
+
+    // 事件日志本体中需要解析的一级Key
+    private static final byte[] KEY_CM = "cm".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] KEY_AP = "ap".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] KEY_ET = "et".getBytes(StandardCharsets.UTF_8);
+
+    private Path basePath;
+    private String filePrefix;
+    private int batchSize;
+    private long rollIntervalMills;
+    private long stripeSize;
+    private long rollSize;
+    private CompressionKind compress;
+    private TimeZone timeZone;
+    private SimpleDateFormat partitionFormat;
+    private long syncIntervalMills;
+    private long maxUnsyncedRows;
+
+    // ORC文件Schema以及cm字段对应的Key,第i个cm字段对应第i+1列
+    private TypeDescription schema;
+    private byte[][] cmKeys;
+    private int apColumn;
+    private int etColumn;
+
+    private Configuration hadoopConf;
+    private FileSystem fileSystem;
+    private SinkCounter sinkCounter;
+    // 每个分区当前正在写入的文件
+    private final Map<String, PartitionWriter> writers = new HashMap<>();
+    private final JsonByteScanner scanner = new JsonByteScanner();
+    private long fileCounter = 0;
+    private long droppedCount = 0;
+
+    // 缓存当前服务器时间所在的分区,避免每个Event都进行日期格式化
+    private long partitionStart = Long.MAX_VALUE;
+    private long partitionEnd = Long.MIN_VALUE;
+    private String partition;
+
+    @Override
+    public void configure(Context context) {
+        // 1.获取基本配置信息
+        String path = context.getString(PATH_KEY);
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(path), "Missing required property: " + PATH_KEY);
+        this.basePath = new Path(path);
+        this.filePrefix = context.getString(FILE_PREFIX_KEY, DEFAULT_FILE_PREFIX);
+        this.batchSize = context.getInteger(BATCH_SIZE_KEY, DEFAULT_BATCH_SIZE);
+        Preconditions.checkArgument(batchSize > 0, BATCH_SIZE_KEY + " must be greater than 0");
+        this.rollIntervalMills = context.getLong(ROLL_INTERVAL_KEY, DEFAULT_ROLL_INTERVAL) * 1000;
+        this.stripeSize = context.getLong(STRIPE_SIZE_KEY, DEFAULT_STRIPE_SIZE);
+        this.rollSize = stripeSize * context.getInteger(ROLL_STRIPES_KEY, DEFAULT_ROLL_STRIPES);
+        this.compress = CompressionKind.valueOf(
+                context.getString(COMPRESS_KEY, DEFAULT_COMPRESS).trim().toUpperCase());
+        // 小于等于0时只在ORC写出完整Stripe后同步
+        this.syncIntervalMills = context.getLong(SYNC_INTERVAL_KEY, DEFAULT_SYNC_INTERVAL) * 1000;
+        this.maxUnsyncedRows = context.getLong(MAX_UNSYNCED_ROWS_KEY, DEFAULT_MAX_UNSYNCED_ROWS);
+        Preconditions.checkArgument(maxUnsyncedRows >= 0, MAX_UNSYNCED_ROWS_KEY + " must not be negative");
+
+        // 2.分区格式
+        String tz = context.getString(TIME_ZONE_KEY);
+        this.timeZone = Strings.isNullOrEmpty(tz) ? TimeZone.getDefault() : TimeZone.getTimeZone(tz);
+        this.partitionFormat = new SimpleDateFormat(
+                context.getString(PARTITION_FORMAT_KEY, DEFAULT_PARTITION_FORMAT));
+        this.partitionFormat.setTimeZone(timeZone);
+
+        // 3.根据cm字段生成Schema:server_time,cm字段...,ap,et
+        String[] cmFields = context.getString(CM_FIELDS_KEY, DEFAULT_CM_FIELDS).split(",");
+        this.cmKeys = new byte[cmFields.length][];
+        TypeDescription struct = TypeDescription.createStruct()
+                .addField("server_time", TypeDescription.createLong());
+        for (int i = 0; i < cmFields.length; i++) {
+            String field = cmFields[i].trim();
+            cmKeys[i] = field.getBytes(StandardCharsets.UTF_8);
+            struct.addField(field, TypeDescription.createString());
+        }
+        this.apColumn = cmFields.length + 1;
+        this.etColumn = cmFields.length + 2;
+        struct.addField("ap", TypeDescription.createString());
+        struct.addField("et", TypeDescription.createString());
+        this.schema = struct;
+
+        if (sinkCounter == null) {
+            sinkCounter = new SinkCounter(getName());
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        try {
+            hadoopConf = new Configuration();
+            fileSystem = basePath.getFileSystem(hadoopConf);
+            // 本地文件系统带校验和的输出流在hflush时不会写到磁盘,中间Footer无法持久化,因此使用不带校验和的原始实现
+            if (fileSystem instanceof LocalFileSystem) fileSystem = ((LocalFileSystem) fileSystem).getRaw();
+        } catch (IOException e) {
+            throw new FlumeException("Unable to get FileSystem for " + basePath, e);
+        }
+        sinkCounter.start();
+        super.start();
+        logger.info("OrcEventLogSink " + getName() + " started, writing to " + basePath + " with schema " + schema);
+    }
+
+    @Override
+    public synchronized void stop() {
+        // 关闭所有正在写入的文件
+        for (PartitionWriter writer : writers.values()) {
+            closeWriter(writer);
+        }
+        writers.clear();
+        sinkCounter.stop();
+        logger.info("OrcEventLogSink " + getName() + " stopped, dropped " + droppedCount
+                + " invalid events. Metrics: " + sinkCounter);
+        super.stop();
+    }
+
+    @Override
+    public Status process() throws EventDeliveryException {
+        Status result = Status.READY;
+        // 1.获取Channel和Transaction
+        Channel channel = getChannel();
+        Transaction transaction = channel.getTransaction();
+
+        try {
+            // 2.开启事务,批量取出Event并追加到对应分区的Writer中
+            transaction.begin();
+            int count = 0;
+            // 每个分区的行批次容量为batchSize,因此提交前不会有本批次的行交给ORC Writer
+            for (; count < batchSize; count++) {
+                Event event = channel.take();
+                if (event == null) break;
+                append(event.getBody());
+            }
+            if (count == 0) {
+                sinkCounter.incrementBatchEmptyCount();
+                result = Status.BACKOFF;
+            } else {
+                if (count < batchSize) sinkCounter.incrementBatchUnderflowCount();
+                else sinkCounter.incrementBatchCompleteCount();
+                sinkCounter.addToEventDrainAttemptCount(count);
+                // 3.在提交Channel事务之前将本批次的行交给ORC Writer,未同步的行过多时同步
+                flushTouched();
+                syncBeforeCommit();
+            }
+            // 4.提交事务
+            transaction.commit();
+            sinkCounter.addToEventDrainSuccessCount(count);
+        } catch (Throwable t) {
+            transaction.rollback();
+            // 尚未交给ORC的行直接丢弃,已交给ORC的Writer回退到最近一次同步的位置,避免回滚的批次重复写入
+            abortTouched();
+            if (t instanceof Error) throw (Error) t;
+            throw new EventDeliveryException("Failed to write ORC batch", t);
+        } finally {
+            transaction.close();
+        }
+
+        // 5.按需同步已提交的数据,并滚动达到时间或大小阈值的文件
+        long now = System.currentTimeMillis();
+        syncIfNeeded(now);
+        rollIfNeeded(now);
+        return result;
+    }
+
+    // 解析单个事件日志并追加到对应分区的行批次中,非法日志直接丢弃
+    private void append(byte[] body) throws IOException {
+        // 1.校验格式并获取服务器时间
+        long serverTime = LogUtils.parseServerTime(body);
+        if (serverTime < 0) {
+            droppedCount++;
+            return;
+        }
+        PartitionWriter writer = writerFor(serverTime);
+        VectorizedRowBatch batch = writer.batch;
+        int row = batch.size;
+
+        // 2.初始化当前行,所有字符串列默认为null
+        ((LongColumnVector) batch.cols[0]).vector[row] = serverTime;
+        for (int i = 1; i < batch.numCols; i++) {
+            batch.cols[i].noNulls = false;
+            batch.cols[i].isNull[row] = true;
+        }
+
+        // 3.流式解析日志本体,只有解析成功时才真正占用此行
+        try {
+            scanner.reset(body, LogUtils.SERVER_TIME_LENGTH + 1, body.length);
+            if (!scanner.enterObject()) throw new IllegalArgumentException("Not a json object");
+            while (scanner.nextMember()) {
+                if (scanner.keyEquals(KEY_CM)) {
+                    appendCommon(batch, row, body);
+                } else if (scanner.keyEquals(KEY_AP)) {
+                    scanner.skipValue();
+                    setValue(batch, apColumn, row, body);
+                } else if (scanner.keyEquals(KEY_ET)) {
+                    scanner.skipValue();
+                    setRaw(batch, etColumn, row, body);
+                } else {
+                    scanner.skipValue();
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            droppedCount++;
+            if (logger.isDebugEnabled()) logger.debug("Dropped malformed event log: " + e.getMessage());
+            return;
+        }
+        batch.size++;
+        writer.touched = true;
+    }
+
+    // 解析公共字段cm中配置的各个字段
+    private void appendCommon(VectorizedRowBatch batch, int row, byte[] body) {
+        if (!scanner.enterObject()) {
+            scanner.skipValue();
+            return;
+        }
+        while (scanner.nextMember()) {
+            scanner.skipValue();
+            for (int i = 0; i < cmKeys.length; i++) {
+                if (scanner.keyEquals(cmKeys[i])) {
+                    setValue(batch, i + 1, row, body);
+                    break;
+                }
+            }
+        }
+    }
+
+    // 将最近扫描到的Value写入字符串列,无转义字符时直接引用Body中的字节,不进行复制
+    private void setValue(VectorizedRowBatch batch, int column, int row, byte[] body) {
+        BytesColumnVector vector = (BytesColumnVector) batch.cols[column];
+        if (scanner.valueIsString()) {
+            if (scanner.valueEscaped()) {
+                byte[] decoded = scanner.decodedValue();
+                vector.setRef(row, decoded, 0, decoded.length);
+            } else {
+                int start = scanner.valueStart() + 1;
+                vector.setRef(row, body, start, scanner.valueEnd() - 1 - start);
+            }
+        } else {
+            // null字面量保持为null,其余类型保存原始文本
+            if (body[scanner.valueStart()] == 'n') return;
+            setRaw(batch, column, row, body);
+            return;
+        }
+        vector.isNull[row] = false;
+    }
+
+    // 将最近扫描到的Value的原始JSON文本写入字符串列
+    private void setRaw(VectorizedRowBatch batch, int column, int row, byte[] body) {
+        BytesColumnVector vector = (BytesColumnVector) batch.cols[column];
+        vector.setRef(row, body, scanner.valueStart(), scanner.valueEnd() - scanner.valueStart());
+        vector.isNull[row] = false;
+    }
+
+    // 获取服务器时间所属分区的Writer,不存在时创建新文件
+    private PartitionWriter writerFor(long serverTime) throws IOException {
+        if (serverTime < partitionStart || serverTime >= partitionEnd) {
+            Calendar calendar = Calendar.getInstance(timeZone);
+            calendar.setTimeInMillis(serverTime);
+            calendar.set(Calendar.HOUR_OF_DAY, 0);
+            calendar.set(Calendar.MINUTE, 0);
+            calendar.set(Calendar.SECOND, 0);
+            calendar.set(Calendar.MILLISECOND, 0);
+            partitionStart = calendar.getTimeInMillis();
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+            partitionEnd = calendar.getTimeInMillis();
+            partition = partitionFormat.format(new Date(partitionStart));
+        }
+        PartitionWriter writer = writers.get(partition);
+        if (writer == null) {
+            writer = new PartitionWriter(partition);
+            writers.put(partition, writer);
+        }
+        return writer;
+    }
+
+    // 将本批次写入过的Writer中的行交给ORC编码
+    private void flushTouched() throws IOException {
+        for (PartitionWriter writer : writers.values()) {
+            if (!writer.touched) continue;
+            writer.handedOver = true;
+            writer.flushBatch();
+        }
+    }
+
+    // 本批次之后未同步的行超过maxUnsyncedRows时同步,失败时抛出异常使事务回滚
+    private void syncBeforeCommit() throws IOException {
+        long now = System.currentTimeMillis();
+        for (PartitionWriter writer : writers.values()) {
+            if (!writer.touched || writer.rows - writer.syncedRows <= maxUnsyncedRows) continue;
+            writer.syncInBatch(now);
+        }
+    }
+
+    // 事务回滚:行仍在内存中的Writer清空行批次继续使用,已交给ORC的Writer放弃
+    private void abortTouched() {
+        Iterator<PartitionWriter> iterator = writers.values().iterator();
+        while (iterator.hasNext()) {
+            PartitionWriter writer = iterator.next();
+            if (!writer.touched) continue;
+            if (writer.handedOver) {
+                iterator.remove();
+                // 本批次已提前同步时回退到本批次之前的同步位置,回滚的行不会发布
+                writer.revertBatchSync();
+                discard(writer);
+            } else {
+                writer.batch.reset();
+                writer.touched = false;
+            }
+        }
+    }
+
+    // 事务提交后同步需要同步的Writer,同步失败时放弃该Writer
+    private void syncIfNeeded(long now) {
+        Iterator<PartitionWriter> iterator = writers.values().iterator();
+        while (iterator.hasNext()) {
+            PartitionWriter writer = iterator.next();
+            writer.touched = false;
+            writer.handedOver = false;
+            writer.batchSynced = false;
+            // ORC已写出新的完整Stripe时同步只追加Footer;否则到达syncInterval才强制结束当前Stripe
+            boolean stripeWritten = writer.stripes > writer.stripesAtSync;
+            boolean expired = syncIntervalMills > 0 && now - writer.syncedAt >= syncIntervalMills
+                    && writer.rows > writer.syncedRows;
+            if (!stripeWritten && !expired) continue;
+            try {
+                writer.sync(now);
+            } catch (Exception e) {
+                logger.error("Failed to sync ORC file " + writer.inUsePath, e);
+                iterator.remove();
+                discard(writer);
+            }
+        }
+    }
+
+    // 关闭达到滚动条件的文件
+    private void rollIfNeeded(long now) {
+        Iterator<PartitionWriter> iterator = writers.values().iterator();
+        while (iterator.hasNext()) {
+            PartitionWriter writer = iterator.next();
+            boolean expired = rollIntervalMills > 0 && now - writer.openedAt >= rollIntervalMills;
+            if (expired || writer.writer.getRawDataSize() >= rollSize) {
+                iterator.remove();
+                closeWriter(writer);
+            }
+        }
+    }
+
+    // 关闭文件,关闭失败时放弃该Writer
+    private void closeWriter(PartitionWriter writer) {
+        try {
+            writer.close();
+        } catch (Exception e) {
+            logger.error("Failed to close ORC file " + writer.inUsePath, e);
+            discard(writer);
+        }
+    }
+
+    // 放弃状态未知的Writer,发布最近一次同步位置之前的数据
+    private void discard(PartitionWriter writer) {
+        sinkCounter.incrementConnectionFailedCount();
+        long lost = writer.closed ? 0 : writer.rows - writer.syncedRows;
+        try {
+            writer.recover();
+            logger.warn("Discarded ORC writer of {}, {} rows after the last sync were dropped", writer.finalPath, lost);
+        } catch (Exception e) {
+            // 保留未完成的文件,其前syncedLength个字节为完整的ORC文件,可以手动恢复
+            logger.error("Failed to recover ORC file " + writer.inUsePath + ", the first " + writer.syncedLength
+                    + " bytes contain " + writer.syncedRows + " committed rows", e);
+        }
+    }
+
+    // 单个分区正在写入的ORC文件
+    private class PartitionWriter {
+        private final Path inUsePath;
+        private final Path finalPath;
+        private final Writer writer;
+        private final VectorizedRowBatch batch;
+        private final long openedAt;
+        // 当前批次是否写入过数据,以及这些行是否已经交给ORC Writer
+        private boolean touched = false;
+        private boolean handedOver = false;
+        // ORC Writer已写出的Stripe数,由写出Stripe前的回调累加
+        private int stripes = 0;
+        // 已交给ORC Writer的行数,Writer自身的行数只在写出Stripe时更新
+        private long rows = 0;
+        // 最近一次同步时的Stripe数、文件长度、行数和时间,文件长度为0表示尚未同步
+        private int stripesAtSync = 0;
+        private long syncedLength = 0;
+        private long syncedRows = 0;
+        private long syncedAt;
+        // 本批次提交前是否同步过,以及同步前的文件长度和行数,事务回滚时回退到该位置
+        private boolean batchSynced = false;
+        private long lengthBeforeBatch;
+        private long rowsBeforeBatch;
+        private boolean closed = false;
+
+        PartitionWriter(String partition) throws IOException {
+            Path dir = new Path(basePath, partition);
+            String fileName = filePrefix + "." + System.currentTimeMillis() + "." + (fileCounter++);
+            this.inUsePath = new Path(dir, IN_USE_PREFIX + fileName + FILE_SUFFIX + IN_USE_SUFFIX);
+            this.finalPath = new Path(dir, fileName + FILE_SUFFIX);
+            this.writer = OrcFile.createWriter(inUsePath, OrcFile.writerOptions(hadoopConf)
+                    .fileSystem(fileSystem)
+                    .setSchema(schema)
+                    .stripeSize(stripeSize)
+                    .compress(compress)
+                    .callback(new OrcFile.WriterCallback() {
+                        @Override
+                        public void preStripeWrite(OrcFile.WriterContext context) {
+                            stripes++;
+                        }
+
+                        @Override
+                        public void preFooterWrite(OrcFile.WriterContext context) {
+                        }
+                    }));
+            this.batch = schema.createRowBatch(batchSize);
+            this.openedAt = System.currentTimeMillis();
+            this.syncedAt = openedAt;
+            sinkCounter.incrementConnectionCreatedCount();
+            logger.info("Opened ORC file {}", inUsePath);
+        }
+
+        void flushBatch() throws IOException {
+            if (batch.size > 0) {
+                writer.addRowBatch(batch);
+                rows += batch.size;
+                batch.reset();
+            }
+        }
+
+        // 写入中间Footer,文件中此位置之前的字节即为一个完整的ORC文件
+        void sync(long now) throws IOException {
+            syncedLength = writer.writeIntermediateFooter();
+            stripesAtSync = stripes;
+            syncedRows = rows;
+            syncedAt = now;
+        }
+
+        // 提交Channel事务之前同步,记录同步前的位置
+        void syncInBatch(long now) throws IOException {
+            if (!batchSynced) {
+                lengthBeforeBatch = syncedLength;
+                rowsBeforeBatch = syncedRows;
+            }
+            sync(now);
+            batchSynced = true;
+        }
+
+        void revertBatchSync() {
+            if (!batchSynced) return;
+            syncedLength = lengthBeforeBatch;
+            syncedRows = rowsBeforeBatch;
+            batchSynced = false;
+        }
+
+        void close() throws IOException {
+            try {
+                flushBatch();
+                writer.close();
+                closed = true;
+            } finally {
+                sinkCounter.incrementConnectionClosedCount();
+            }
+            rename(inUsePath);
+            logger.info("Closed ORC file {}", finalPath);
+        }
+
+        /**
+         * 放弃Writer后发布已同步的数据:已关闭的文件直接重命名,否则将最近一次同步位置之前的字节
+         * 复制为正式文件,未同步过的文件直接删除.Writer不再使用,其输出流不会再写入.
+         */
+        void recover() throws IOException {
+            if (closed) {
+                rename(inUsePath);
+                return;
+            }
+            if (syncedLength > 0) {
+                Path recoverPath = new Path(inUsePath.getParent(), inUsePath.getName() + ".recover");
+                try (FSDataInputStream in = fileSystem.open(inUsePath);
+                     FSDataOutputStream out = fileSystem.create(recoverPath, true)) {
+                    IOUtils.copyBytes(in, out, syncedLength, false);
+                }
+                rename(recoverPath);
+            }
+            fileSystem.delete(inUsePath, false);
+        }
+
+        private void rename(Path source) throws IOException {
+            if (!fileSystem.rename(source, finalPath)) {
+                throw new IOException("Failed to rename " + source + " to " + finalPath);
+            }
+        }
+    }
+}
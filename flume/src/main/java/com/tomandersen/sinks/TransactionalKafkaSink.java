@@ -0,0 +1,229 @@
+package com.tomandersen.sinks;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import org.apache.flume.*;
+import org.apache.flume.conf.Configurable;
+import org.apache.flume.instrumentation.SinkCounter;
+import org.apache.flume.sink.AbstractSink;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.errors.AuthorizationException;
+import org.apache.kafka.common.errors.OutOfOrderSequenceException;
+import org.apache.kafka.common.errors.ProducerFencedException;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * @Author TomAndersen
+ * @Date 2026/10/19
+ * @Version
+ * @Description: 使用Kafka事务的Sink,每个Channel事务对应一个Kafka事务.
+ * <p>
+ * 每批次Event在一个Kafka事务中发送,只有Kafka事务提交成功后才提交Channel事务,
+ * 发送失败时同时回滚(abort)Kafka事务和Channel事务,因此Agent重启或失败重试时回放的整批数据
+ * 对read_committed的Consumer不可见,不会在下游产生重复.仅在Kafka事务提交成功与Channel事务提交之间宕机时
+ * 会出现重复,这是两个系统之间没有两阶段提交时不可避免的窗口.
+ * <p>
+ * transactional.id默认为"主机名-Sink名称",在同一台机器上重启后保持不变,
+ * 新实例调用initTransactions()时会隔离(fence)旧实例未完成的事务.
+ * 消息发送是异步的,一次提交只需等待一次flush,大批次下吞吐量接近非事务发送.
+ * <p>
+ * 配置示例:
+ * <pre>
+ *     a1.sinks.k1.type = com.tomandersen.sinks.TransactionalKafkaSink
+ *     a1.sinks.k1.kafka.bootstrap.servers = hadoop101:9092,hadoop102:9092
+ *     a1.sinks.k1.kafka.topic = topic_event
+ *     a1.sinks.k1.batchSize = 2000
+ *     a1.sinks.k1.kafka.producer.linger.ms = 5
+ * </pre>
+ * Event Header中的topic(参见LogTypeInterceptor)和key会覆盖默认的Topic和消息Key.
+ * 注意Flume自带的lib目录中可能包含旧版本kafka-clients,需要保证运行时使用0.11以上版本.
+ */
+public class TransactionalKafkaSink extends AbstractSink implements Configurable {
+    private static final Logger logger = LoggerFactory.getLogger(TransactionalKafkaSink.class);
+
+    // 配置项以及默认值
+    public static final String BOOTSTRAP_SERVERS_KEY = "kafka.bootstrap.servers";
+    public static final String TOPIC_KEY = "kafka.topic";
+    public static final String PRODUCER_PREFIX = "kafka.producer.";
+    public static final String TRANSACTIONAL_ID_KEY = "transactionalId";
+    public static final String BATCH_SIZE_KEY = "batchSize";
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final String USE_TOPIC_HEADER_KEY = "useTopicHeader";
+    public static final String TOPIC_HEADER = "topic";
+    public static final String KEY_HEADER = "key";
+
+    private String defaultTopic;
+    private int batchSize;
+    private boolean useTopicHeader;
+    private String transactionalId;
+    private Properties producerProps;
+    private Producer<byte[], byte[]> producer;
+    private SinkCounter sinkCounter;
+
+    @Override
+    public void configure(Context context) {
+        // 1.获取Kafka集群以及Topic
+        String bootstrapServers = context.getString(BOOTSTRAP_SERVERS_KEY);
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(bootstrapServers),
+                "Missing required property: " + BOOTSTRAP_SERVERS_KEY);
+        this.defaultTopic = context.getString(TOPIC_KEY);
+        this.useTopicHeader = context.getBoolean(USE_TOPIC_HEADER_KEY, true);
+        Preconditions.checkArgument(useTopicHeader || !Strings.isNullOrEmpty(defaultTopic),
+                "Missing required property: " + TOPIC_KEY);
+        this.batchSize = context.getInteger(BATCH_SIZE_KEY, DEFAULT_BATCH_SIZE);
+        Preconditions.checkArgument(batchSize > 0, BATCH_SIZE_KEY + " must be greater than 0");
+
+        // 2.生成稳定的transactional.id
+        this.transactionalId = context.getString(TRANSACTIONAL_ID_KEY);
+        if (Strings.isNullOrEmpty(transactionalId)) {
+            String host;
+            try {
+                host = InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+                throw new FlumeException("Unable to resolve local host name, please set " + TRANSACTIONAL_ID_KEY, e);
+            }
+            this.transactionalId = host + "-" + getName();
+        }
+
+        // 3.组装Producer配置,kafka.producer.*参数直接传递给Producer
+        Properties props = new Properties();
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.LINGER_MS_CONFIG, "5");
+        for (Map.Entry<String, String> entry : context.getSubProperties(PRODUCER_PREFIX).entrySet()) {
+            props.put(entry.getKey(), entry.getValue());
+        }
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, "true");
+        props.put(ProducerConfig.TRANSACTIONAL_ID_CONFIG, transactionalId);
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+        this.producerProps = props;
+
+        if (sinkCounter == null) {
+            sinkCounter = new SinkCounter(getName());
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        sinkCounter.start();
+        super.start();
+        logger.info("TransactionalKafkaSink " + getName() + " started with transactional.id " + transactionalId);
+    }
+
+    @Override
+    public synchronized void stop() {
+        closeProducer();
+        sinkCounter.stop();
+        logger.info("TransactionalKafkaSink " + getName() + " stopped. Metrics: " + sinkCounter);
+        super.stop();
+    }
+
+    @Override
+    public Status process() throws EventDeliveryException {
+        Status result = Status.READY;
+        // 1.首次使用或出现致命错误后重新创建Producer,initTransactions()会隔离同一ID的旧实例
+        if (producer == null) {
+            try {
+                producer = new KafkaProducer<>(producerProps);
+                producer.initTransactions();
+                sinkCounter.incrementConnectionCreatedCount();
+            } catch (KafkaException e) {
+                closeProducer();
+                throw new EventDeliveryException("Failed to initialize transactional Kafka producer", e);
+            }
+        }
+
+        // 2.获取Channel和Transaction
+        Channel channel = getChannel();
+        Transaction transaction = channel.getTransaction();
+        boolean kafkaTransactionOpen = false;
+
+        try {
+            // 3.开启Channel事务并取出第一个Event,Channel为空时不开启Kafka事务
+            transaction.begin();
+            Event event = channel.take();
+            if (event == null) {
+                sinkCounter.incrementBatchEmptyCount();
+                transaction.commit();
+                return Status.BACKOFF;
+            }
+
+            // 4.开启Kafka事务,在同一个事务中异步发送整个批次
+            producer.beginTransaction();
+            kafkaTransactionOpen = true;
+            int count = 0;
+            while (event != null) {
+                producer.send(toRecord(event));
+                if (++count >= batchSize) break;
+                event = channel.take();
+            }
+            if (count < batchSize) sinkCounter.incrementBatchUnderflowCount();
+            else sinkCounter.incrementBatchCompleteCount();
+            sinkCounter.addToEventDrainAttemptCount(count);
+
+            // 5.先提交Kafka事务(内部会flush并等待所有消息确认),成功后再提交Channel事务
+            producer.commitTransaction();
+            kafkaTransactionOpen = false;
+            transaction.commit();
+            sinkCounter.addToEventDrainSuccessCount(count);
+        } catch (ProducerFencedException | OutOfOrderSequenceException | AuthorizationException e) {
+            // 致命错误:Producer无法继续使用,关闭后下次重新创建
+            transaction.rollback();
+            closeProducer();
+            throw new EventDeliveryException("Fatal Kafka producer error, producer will be recreated", e);
+        } catch (Exception e) {
+            // 其他错误:回滚Kafka事务和Channel事务,整批重试
+            if (kafkaTransactionOpen) abortQuietly();
+            transaction.rollback();
+            throw new EventDeliveryException("Failed to publish events to Kafka", e);
+        } finally {
+            transaction.close();
+        }
+        return result;
+    }
+
+    // 将Event转换为ProducerRecord
+    private ProducerRecord<byte[], byte[]> toRecord(Event event) {
+        Map<String, String> headers = event.getHeaders();
+        String topic = useTopicHeader ? headers.get(TOPIC_HEADER) : null;
+        if (topic == null) topic = defaultTopic;
+        if (topic == null) throw new IllegalStateException("No topic header and no " + TOPIC_KEY + " configured");
+        String key = headers.get(KEY_HEADER);
+        return new ProducerRecord<>(topic, key == null ? null : key.getBytes(StandardCharsets.UTF_8), event.getBody());
+    }
+
+    private void abortQuietly() {
+        try {
+            producer.abortTransaction();
+        } catch (KafkaException e) {
+            // abort失败说明Producer状态已不可用,关闭后重新创建
+            logger.warn("Failed to abort Kafka transaction, producer will be recreated", e);
+            closeProducer();
+        }
+    }
+
+    private void closeProducer() {
+        if (producer == null) return;
+        try {
+            producer.close();
+        } catch (Exception e) {
+            logger.warn("Failed to close Kafka producer", e);
+        } finally {
+            producer = null;
+            sinkCounter.incrementConnectionClosedCount();
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package com.tomandersen.sources;
+
+import com.google.common.base.Preconditions;
+import org.apache.flume.ChannelException;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.EventDrivenSource;
+import org.apache.flume.FlumeException;
+import org.apache.flume.conf.Configurable;
+import org.apache.flume.event.EventBuilder;
+import org.apache.flume.instrumentation.SourceCounter;
+import org.apache.flume.source.AbstractSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Author TomAndersen
+ * @Date 2026/10/19
+ * @Version
+ * @Description: 基于NIO的长度前缀TCP Source,供业务后端直接推送日志,无需先落盘再由Flume采集.
+ * <p>
+ * 协议:客户端发送若干批次,每个批次格式为
+ * <pre>
+ *     [int32 批次长度N][N字节:若干条 ([int32 日志长度L][L字节日志])]
+ * </pre>
+ * 整数均为大端序.每个批次作为一个Channel事务写入,只有提交成功后才按顺序返回1字节应答:
+ * 0表示成功;2表示批次格式错误,随后服务端关闭连接.客户端可以不等待应答连续发送多个批次(流水线).
+ * <p>
+ * Channel已满时不返回失败,而是暂停该连接的读取(取消OP_READ)并按指数退避重试,
+ * 由TCP流量控制将背压传递给客户端.每个连接使用一个从缓冲池中取出的读缓冲区,批次超过缓冲区大小时临时扩容.
+ * 一个Acceptor线程负责接收连接,连接按轮询方式分配给workers个Selector线程处理.
+ * <p>
+ * 配置示例:
+ * <pre>
+ *     a1.sources.r1.type = com.tomandersen.sources.LengthPrefixedTcpSource
+ *     a1.sources.r1.bind = 0.0.0.0
+ *     a1.sources.r1.port = 5140
+ *     a1.sources.r1.workers = 4
+ * </pre>
+ */
+public class LengthPrefixedTcpSource extends AbstractSource implements EventDrivenSource, Configurable {
+    private static final Logger logger = LoggerFactory.getLogger(LengthPrefixedTcpSource.class);
+
+    // 配置项以及默认值
+    public static final String BIND_KEY = "bind";
+    public static final String DEFAULT_BIND = "0.0.0.0";
+    public static final String PORT_KEY = "port";
+    public static final String WORKERS_KEY = "workers";
+    public static final String BUFFER_SIZE_KEY = "bufferSize";
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final String MAX_BATCH_BYTES_KEY = "maxBatchBytes";
+    public static final int DEFAULT_MAX_BATCH_BYTES = 16 * 1024 * 1024;
+    public static final String BACKOFF_KEY = "backoff";
+    public static final long DEFAULT_BACKOFF = 50;
+    public static final String MAX_BACKOFF_KEY = "maxBackoff";
+    public static final long DEFAULT_MAX_BACKOFF = 2000;
+
+    // 应答状态
+    public static final byte ACK_OK = 0;
+    public static final byte ACK_MALFORMED = 2;
+
+    private String bind;
+    private int port;
+    private int workerCount;
+    private int bufferSize;
+    private int maxBatchBytes;
+    private long backoffMills;
+    private long maxBackoffMills;
+
+    private ServerSocketChannel serverChannel;
+    private Thread acceptorThread;
+    private Worker[] workers;
+    private Thread[] workerThreads;
+    private SourceCounter sourceCounter;
+    // 读缓冲区池,连接关闭时归还
+    private final Queue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private volatile boolean running;
+
+    @Override
+    public void configure(Context context) {
+        this.bind = context.getString(BIND_KEY, DEFAULT_BIND);
+        Integer portValue = context.getInteger(PORT_KEY);
+        Preconditions.checkArgument(portValue != null, "Missing required property: " + PORT_KEY);
+        this.port = portValue;
+        this.workerCount = context.getInteger(WORKERS_KEY, Runtime.getRuntime().availableProcessors());
+        Preconditions.checkArgument(workerCount > 0, WORKERS_KEY + " must be greater than 0");
+        this.bufferSize = context.getInteger(BUFFER_SIZE_KEY, DEFAULT_BUFFER_SIZE);
+        this.maxBatchBytes = context.getInteger(MAX_BATCH_BYTES_KEY, DEFAULT_MAX_BATCH_BYTES);
+        this.backoffMills = context.getLong(BACKOFF_KEY, DEFAULT_BACKOFF);
+        this.maxBackoffMills = context.getLong(MAX_BACKOFF_KEY, DEFAULT_MAX_BACKOFF);
+        if (sourceCounter == null) {
+            sourceCounter = new SourceCounter(getName());
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        try {
+            // 1.启动Selector线程
+            running = true;
+            workers = new Worker[workerCount];
+            workerThreads = new Thread[workerCount];
+            for (int i = 0; i < workerCount; i++) {
+                workers[i] = new Worker(Selector.open());
+                workerThreads[i] = new Thread(workers[i], getName() + "-worker-" + i);
+                workerThreads[i].setDaemon(true);
+                workerThreads[i].start();
+            }
+            // 2.绑定端口并启动Acceptor线程
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.bind(new InetSocketAddress(bind, port));
+        } catch (IOException e) {
+            // 启动失败(例如端口被占用)时释放已创建的线程、Selector及Socket,LifecycleSupervisor会重试start()
+            running = false;
+            closeServerChannel();
+            stopWorkers();
+            throw new FlumeException("Unable to start LengthPrefixedTcpSource on " + bind + ":" + port, e);
+        }
+        acceptorThread = new Thread(this::acceptLoop, getName() + "-acceptor");
+        acceptorThread.setDaemon(true);
+        acceptorThread.start();
+        sourceCounter.start();
+        super.start();
+        logger.info("LengthPrefixedTcpSource " + getName() + " listening on " + bind + ":" + port);
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        closeServerChannel();
+        if (acceptorThread != null) {
+            try {
+                acceptorThread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Worker退出时才归还连接的读缓冲区,因此等待Worker结束后再清空缓冲池
+        stopWorkers();
+        bufferPool.clear();
+        sourceCounter.stop();
+        logger.info("LengthPrefixedTcpSource " + getName() + " stopped. Metrics: " + sourceCounter);
+        super.stop();
+    }
+
+    // 返回实际绑定的端口,配置端口为0时由系统分配
+    public int getPort() {
+        return serverChannel == null ? port : serverChannel.socket().getLocalPort();
+    }
+
+    private void closeServerChannel() {
+        if (serverChannel == null) return;
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close server socket", e);
+        }
+    }
+
+    // 唤醒并等待Worker线程退出,调用前需要将running置为false;Selector由Worker退出时关闭,未能及时退出时在此关闭
+    private void stopWorkers() {
+        if (workers == null) return;
+        for (Worker worker : workers) {
+            if (worker != null) worker.selector.wakeup();
+        }
+        for (Thread thread : workerThreads) {
+            if (thread == null) continue;
+            try {
+                thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (Worker worker : workers) {
+            if (worker == null) continue;
+            try {
+                worker.selector.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close selector", e);
+            }
+        }
+        workers = null;
+        workerThreads = null;
+    }
+
+    // 接收连接并按轮询方式分配给Selector线程
+    private void acceptLoop() {
+        Worker[] targets = workers;
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                targets[next].register(channel);
+                next = (next + 1) % targets.length;
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                if (running) logger.warn("Failed to accept connection", e);
+            }
+        }
+    }
+
+    private ByteBuffer borrowBuffer() {
+        ByteBuffer buffer = bufferPool.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    private void returnBuffer(ByteBuffer buffer) {
+        // 临时扩容的缓冲区不归还
+        if (buffer.capacity() == bufferSize) {
+            buffer.clear();
+            bufferPool.offer(buffer);
+        }
+    }
+
+    // 单个连接的状态
+    private static class Connection {
+        private final SocketChannel channel;
+        private ByteBuffer in;
+        // 待发送的应答
+        private ByteBuffer out = ByteBuffer.allocate(64);
+        // 暂停读取后恢复的时间,0表示未暂停
+        private long resumeAt = 0;
+        private long backoff;
+
+        Connection(SocketChannel channel, ByteBuffer in) {
+            this.channel = channel;
+            this.in = in;
+        }
+    }
+
+    // Selector线程,负责所分配连接的读写以及批次提交
+    private class Worker implements Runnable {
+        private final Selector selector;
+        private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+        private final List<SelectionKey> paused = new ArrayList<>();
+
+        Worker(Selector selector) {
+            this.selector = selector;
+        }
+
+        void register(SocketChannel channel) {
+            pending.offer(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select(selectTimeout());
+                    // 1.注册新连接
+                    SocketChannel channel;
+                    while ((channel = pending.poll()) != null) {
+                        try {
+                            channel.register(selector, SelectionKey.OP_READ, new Connection(channel, borrowBuffer()));
+                            sourceCounter.setOpenConnectionCount(openConnections.incrementAndGet());
+                        } catch (ClosedChannelException e) {
+                            // 连接已关闭
+                        }
+                    }
+                    // 2.处理就绪的连接
+                    Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                    while (iterator.hasNext()) {
+                        SelectionKey key = iterator.next();
+                        iterator.remove();
+                        try {
+                            if (key.isValid() && key.isWritable()) flush(key);
+                            if (key.isValid() && key.isReadable()) read(key);
+                        } catch (IOException | RuntimeException e) {
+                            if (!(e instanceof IOException)) logger.warn("Failed to process connection", e);
+                            close(key);
+                        }
+                    }
+                    // 3.恢复到期的暂停连接
+                    resumePaused();
+                }
+            } catch (IOException e) {
+                logger.error("Selector loop failed", e);
+            } finally {
+                for (SelectionKey key : selector.keys()) close(key);
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    logger.warn("Failed to close selector", e);
+                }
+            }
+        }
+
+        // 有暂停的连接时,select的超时时间为最近的恢复时间
+        private long selectTimeout() {
+            if (paused.isEmpty()) return 1000;
+            long now = System.currentTimeMillis();
+            long timeout = Long.MAX_VALUE;
+            for (SelectionKey key : paused) {
+                timeout = Math.min(timeout, ((Connection) key.attachment()).resumeAt - now);
+            }
+            return Math.max(1, timeout);
+        }
+
+        private void read(SelectionKey key) throws IOException {
+            Connection conn = (Connection) key.attachment();
+            int n = conn.channel.read(conn.in);
+            if (n < 0) {
+                close(key);
+                return;
+            }
+            processBatches(key, conn);
+        }
+
+        // 解析缓冲区中所有完整的批次并提交到Channel
+        private void processBatches(SelectionKey key, Connection conn) throws IOException {
+            ByteBuffer in = conn.in;
+            in.flip();
+            try {
+                while (in.remaining() >= 4) {
+                    int batchLength = in.getInt(in.position());
+                    if (batchLength < 0 || batchLength > maxBatchBytes) {
+                        malformed(key, conn, "batch length " + batchLength);
+                        return;
+                    }
+                    if (in.remaining() < 4 + batchLength) {
+                        // 批次不完整,缓冲区不足时扩容
+                        if (in.capacity() < 4 + batchLength) grow(conn, 4 + batchLength);
+                        break;
+                    }
+                    List<Event> events = decode(in, in.position() + 4, batchLength);
+                    if (events == null) {
+                        malformed(key, conn, "event length exceeds batch");
+                        return;
+                    }
+                    sourceCounter.incrementAppendBatchReceivedCount();
+                    sourceCounter.addToEventReceivedCount(events.size());
+                    try {
+                        getChannelProcessor().processEventBatch(events);
+                    } catch (ChannelException e) {
+                        // Channel已满或暂时不可用:保留批次,暂停读取并退避重试
+                        pause(key, conn);
+                        break;
+                    }
+                    // 提交成功后才消费批次并应答
+                    in.position(in.position() + 4 + batchLength);
+                    conn.backoff = 0;
+                    sourceCounter.incrementAppendBatchAcceptedCount();
+                    sourceCounter.addToEventAcceptedCount(events.size());
+                    ack(key, conn, ACK_OK);
+                }
+            } finally {
+                if (conn.in == in) in.compact();
+            }
+        }
+
+        // 解码批次中的每条日志,格式错误时返回null
+        private List<Event> decode(ByteBuffer in, int offset, int length) {
+            List<Event> events = new ArrayList<>();
+            ByteBuffer view = in.duplicate();
+            view.position(offset);
+            int end = offset + length;
+            while (view.position() < end) {
+                if (end - view.position() < 4) return null;
+                int len = view.getInt();
+                if (len < 0 || len > end - view.position()) return null;
+                byte[] body = new byte[len];
+                view.get(body);
+                events.add(EventBuilder.withBody(body));
+            }
+            return events;
+        }
+
+        // 扩容读缓冲区,调用时缓冲区处于读模式,新缓冲区处于写模式
+        private void grow(Connection conn, int capacity) {
+            ByteBuffer bigger = ByteBuffer.allocate(capacity);
+            bigger.put(conn.in);
+            returnBuffer(conn.in);
+            conn.in = bigger;
+        }
+
+        private void pause(SelectionKey key, Connection conn) {
+            conn.backoff = conn.backoff == 0 ? backoffMills : Math.min(maxBackoffMills, conn.backoff * 2);
+            conn.resumeAt = System.currentTimeMillis() + conn.backoff;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            paused.add(key);
+        }
+
+        private void resumePaused() throws IOException {
+            if (paused.isEmpty()) return;
+            long now = System.currentTimeMillis();
+            Iterator<SelectionKey> iterator = paused.iterator();
+            List<SelectionKey> due = new ArrayList<>();
+            while (iterator.hasNext()) {
+                SelectionKey key = iterator.next();
+                if (!key.isValid()) {
+                    iterator.remove();
+                } else if (((Connection) key.attachment()).resumeAt <= now) {
+                    iterator.remove();
+                    due.add(key);
+                }
+            }
+            for (SelectionKey key : due) {
+                Connection conn = (Connection) key.attachment();
+                conn.resumeAt = 0;
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                // 先重试已缓冲的批次,再继续读取
+                try {
+                    processBatches(key, conn);
+                } catch (IOException | RuntimeException e) {
+                    close(key);
+                }
+            }
+        }
+
+        private void ack(SelectionKey key, Connection conn, byte status) throws IOException {
+            if (!conn.out.hasRemaining()) {
+                ByteBuffer bigger = ByteBuffer.allocate(conn.out.capacity() * 2);
+                conn.out.flip();
+                bigger.put(conn.out);
+                conn.out = bigger;
+            }
+            conn.out.put(status);
+            flush(key);
+        }
+
+        private void flush(SelectionKey key) throws IOException {
+            Connection conn = (Connection) key.attachment();
+            conn.out.flip();
+            conn.channel.write(conn.out);
+            boolean remaining = conn.out.hasRemaining();
+            conn.out.compact();
+            if (remaining) key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            else key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+
+        private void malformed(SelectionKey key, Connection conn, String reason) {
+            logger.warn("Malformed batch from " + conn.channel.socket().getRemoteSocketAddress()
+                    + ": " + reason + ", closing connection");
+            try {
+                conn.out.clear();
+                conn.out.put(ACK_MALFORMED).flip();
+                conn.channel.write(conn.out);
+            } catch (IOException e) {
+                // 忽略,连接随后关闭
+            }
+            close(key);
+        }
+
+        private void close(SelectionKey key) {
+            Connection conn = (Connection) key.attachment();
+            key.cancel();
+            try {
+                conn.channel.close();
+            } catch (IOException e) {
+                logger.debug("Failed to close connection", e);
+            }
+            if (conn.in != null) {
+                returnBuffer(conn.in);
+                conn.in = null;
+                sourceCounter.setOpenConnectionCount(openConnections.decrementAndGet());
+            }
+        }
+    }
+}
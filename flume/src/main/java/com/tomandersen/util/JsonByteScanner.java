@@ -0,0 +1,323 @@
+package com.tomandersen.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @Author TomAndersen
+ * @Date 2026/10/19
+ * @Version
+ * @Description: 基于字节数组的轻量级JSON流式扫描器.
+ * 直接在Event Body的原始UTF-8字节上按顺序扫描,不构建DOM,也不解码无关字段,
+ * 只在调用方需要时才将某个值解码为String.非线程安全,每个组件实例复用一个扫描器即可.
+ * <p>
+ * 典型用法:
+ * <pre>
+ *     scanner.reset(body, 14, body.length);
+ *     if (scanner.enterObject()) {
+ *         while (scanner.nextMember()) {
+ *             if (scanner.keyEquals(KEY_CM)) { ... } else scanner.skipValue();
+ *         }
+ *     }
+ * </pre>
+ * 遇到格式错误时抛出{@link IllegalArgumentException},由调用方决定丢弃或放行此Event.
+ */
+public final class JsonByteScanner {
+    // 当前扫描的字节数组
+    private byte[] buf;
+    // 当前扫描位置
+    private int pos;
+    // 扫描上限(不包含)
+    private int limit;
+    // 最近一次读取到的成员Key在buf中的起止位置(不包含引号)
+    private int keyStart;
+    private int keyEnd;
+    // 最近一次跳过或读取的Value在buf中的起止位置(字符串包含引号)
+    private int valueStart;
+    private int valueEnd;
+    // 最近一次读取的成员Key是否包含转义字符
+    private boolean keyEscaped;
+
+    public JsonByteScanner() {
+    }
+
+    // 重置扫描器,扫描buf中[offset,limit)范围内的字节
+    public JsonByteScanner reset(byte[] buf, int offset, int limit) {
+        this.buf = buf;
+        this.pos = offset;
+        this.limit = limit;
+        this.keyStart = this.keyEnd = -1;
+        this.valueStart = this.valueEnd = -1;
+        this.keyEscaped = false;
+        return this;
+    }
+
+    public int position() {
+        return pos;
+    }
+
+    public int keyStart() {
+        return keyStart;
+    }
+
+    public int keyEnd() {
+        return keyEnd;
+    }
+
+    public int valueStart() {
+        return valueStart;
+    }
+
+    public int valueEnd() {
+        return valueEnd;
+    }
+
+    // 如果下一个非空白字节为'{'则进入对象并返回true,否则不移动位置并返回false
+    public boolean enterObject() {
+        skipWhitespace();
+        if (pos < limit && buf[pos] == '{') {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    // 如果下一个非空白字节为'['则进入数组并返回true,否则不移动位置并返回false
+    public boolean enterArray() {
+        skipWhitespace();
+        if (pos < limit && buf[pos] == '[') {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 读取当前对象的下一个成员Key,并停在对应Value之前.
+     * 读到对象结尾'}'时消费此字节并返回false.
+     */
+    public boolean nextMember() {
+        skipWhitespace();
+        if (pos >= limit) throw malformed();
+        byte c = buf[pos];
+        if (c == '}') {
+            pos++;
+            return false;
+        }
+        if (c == ',') {
+            pos++;
+            skipWhitespace();
+            if (pos >= limit) throw malformed();
+            c = buf[pos];
+        } else if (previousByte() != '{') {
+            // 非第一个成员之前必须有逗号
+            throw malformed();
+        }
+        if (c != '"') throw malformed();
+        keyStart = pos + 1;
+        keyEnd = scanStringEnd(pos) - 1;
+        keyEscaped = indexOf((byte) '\\', keyStart, keyEnd) >= 0;
+        pos = keyEnd + 1;
+        skipWhitespace();
+        if (pos >= limit || buf[pos] != ':') throw malformed();
+        pos++;
+        return true;
+    }
+
+    /**
+     * 移动到当前数组的下一个元素之前.
+     * 读到数组结尾']'时消费此字节并返回false.
+     */
+    public boolean nextElement() {
+        skipWhitespace();
+        if (pos >= limit) throw malformed();
+        byte c = buf[pos];
+        if (c == ']') {
+            pos++;
+            return false;
+        }
+        if (c == ',') {
+            pos++;
+            skipWhitespace();
+        } else if (previousByte() != '[') {
+            throw malformed();
+        }
+        return true;
+    }
+
+    // 判断最近读取的成员Key是否与指定的UTF-8字节序列相同
+    public boolean keyEquals(byte[] key) {
+        if (keyEscaped || keyEnd - keyStart != key.length) return false;
+        for (int i = 0; i < key.length; i++) {
+            if (buf[keyStart + i] != key[i]) return false;
+        }
+        return true;
+    }
+
+    // 跳过下一个Value(任意类型),返回Value结束位置(不包含)
+    public int skipValue() {
+        skipWhitespace();
+        if (pos >= limit) throw malformed();
+        valueStart = pos;
+        byte c = buf[pos];
+        if (c == '"') {
+            pos = scanStringEnd(pos);
+        } else if (c == '{' || c == '[') {
+            int depth = 0;
+            while (pos < limit) {
+                c = buf[pos];
+                if (c == '"') {
+                    pos = scanStringEnd(pos);
+                    continue;
+                }
+                if (c == '{' || c == '[') depth++;
+                else if (c == '}' || c == ']') {
+                    if (--depth == 0) {
+                        pos++;
+                        break;
+                    }
+                }
+                pos++;
+            }
+            if (depth != 0) throw malformed();
+        } else {
+            // 数字、true、false、null等字面量
+            while (pos < limit) {
+                c = buf[pos];
+                if (c == ',' || c == '}' || c == ']' || isWhitespace(c)) break;
+                pos++;
+            }
+            if (pos == valueStart) throw malformed();
+        }
+        valueEnd = pos;
+        return valueEnd;
+    }
+
+    // 判断最近跳过的Value是否为字符串
+    public boolean valueIsString() {
+        return valueStart >= 0 && buf[valueStart] == '"';
+    }
+
+    // 判断最近跳过的字符串Value中是否包含转义字符,不包含时可直接引用原始字节
+    public boolean valueEscaped() {
+        return valueIsString() && indexOf((byte) '\\', valueStart + 1, valueEnd - 1) >= 0;
+    }
+
+    /**
+     * 读取下一个Value并解码为String.
+     * 字符串会处理转义字符,null字面量返回null,其余类型返回其原始JSON文本.
+     */
+    public String readString() {
+        skipValue();
+        if (!valueIsString()) {
+            if (valueEnd - valueStart == 4 && buf[valueStart] == 'n') return null;
+            return new String(buf, valueStart, valueEnd - valueStart, StandardCharsets.UTF_8);
+        }
+        return new String(decodedValue(), StandardCharsets.UTF_8);
+    }
+
+    // 返回最近跳过的字符串Value解码转义字符后的UTF-8字节(不包含引号)
+    public byte[] decodedValue() {
+        int from = valueStart + 1;
+        int to = valueEnd - 1;
+        if (!valueEscaped()) {
+            byte[] copy = new byte[to - from];
+            System.arraycopy(buf, from, copy, 0, copy.length);
+            return copy;
+        }
+        // 先解码到StringBuilder,再编码为UTF-8,转义字符在日志中很少出现所以不追求极致
+        StringBuilder sb = new StringBuilder(to - from);
+        int i = from;
+        while (i < to) {
+            int runStart = i;
+            while (i < to && buf[i] != '\\') i++;
+            sb.append(new String(buf, runStart, i - runStart, StandardCharsets.UTF_8));
+            if (i >= to) break;
+            byte e = buf[i + 1];
+            switch (e) {
+                case 'n': sb.append('\n'); break;
+                case 't': sb.append('\t'); break;
+                case 'r': sb.append('\r'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    if (i + 6 > to) throw malformed();
+                    sb.append((char) Integer.parseInt(
+                            new String(buf, i + 2, 4, StandardCharsets.US_ASCII), 16));
+                    i += 4;
+                    break;
+                default: sb.append((char) e);
+            }
+            i += 2;
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 读取下一个Value并解析为非负long,支持数字或仅包含数字的字符串(如cm.t).
+     * 不分配任何对象,无法解析时返回-1.
+     */
+    public long readDigits() {
+        skipValue();
+        int from = valueStart;
+        int to = valueEnd;
+        if (valueIsString()) {
+            from++;
+            to--;
+        }
+        return parseDigits(buf, from, to);
+    }
+
+    // 将buf中[from,to)范围内的十进制数字解析为long,存在非数字字符或溢出时返回-1
+    public static long parseDigits(byte[] buf, int from, int to) {
+        if (from >= to || to - from > 18) return -1;
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int d = buf[i] - '0';
+            if (d < 0 || d > 9) return -1;
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    // 跳过空白字符
+    public void skipWhitespace() {
+        while (pos < limit && isWhitespace(buf[pos])) pos++;
+    }
+
+    // 返回以start处引号开始的字符串结束后的位置(即结尾引号之后)
+    private int scanStringEnd(int start) {
+        int i = start + 1;
+        while (i < limit) {
+            byte c = buf[i];
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '"') return i + 1;
+            i++;
+        }
+        throw malformed();
+    }
+
+    // 返回当前位置之前的第一个非空白字节
+    private byte previousByte() {
+        int i = pos - 1;
+        while (i >= 0 && isWhitespace(buf[i])) i--;
+        return i >= 0 ? buf[i] : 0;
+    }
+
+    private int indexOf(byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == b) return i;
+        }
+        return -1;
+    }
+
+    private static boolean isWhitespace(byte c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private IllegalArgumentException malformed() {
+        return new IllegalArgumentException("Malformed json at position " + pos);
+    }
+}
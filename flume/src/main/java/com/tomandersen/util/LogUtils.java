@@ -47,4 +47,27 @@ public final class LogUtils {
         return true;
 
     }
+
+    // 事件日志服务器时间戳长度
+    public static final int SERVER_TIME_LENGTH = 13;
+
+    // 直接从事件日志(timestamp|json)字节数组中解析服务器时间,只扫描前缀部分,不解码整个Body
+    // 如果不是合法的事件日志则返回-1
+    public static long parseServerTime(byte[] log) {
+        // 1.判空以及长度校验:至少需要"timestamp|{}"
+        if (log == null || log.length < SERVER_TIME_LENGTH + 3) return -1;
+
+        // 2.校验分隔符
+        if (log[SERVER_TIME_LENGTH] != '|') return -1;
+
+        // 3.简单校验json格式:开头为"{",结尾为"}"
+        int start = SERVER_TIME_LENGTH + 1;
+        int end = log.length - 1;
+        while (start <= end && log[start] <= ' ') start++;
+        while (end >= start && log[end] <= ' ') end--;
+        if (start >= end || log[start] != '{' || log[end] != '}') return -1;
+
+        // 4.解析服务器时间
+        return JsonByteScanner.parseDigits(log, 0, SERVER_TIME_LENGTH);
+    }
 }
@@ -0,0 +1,142 @@
+package com.tomandersen.util;
+
+import com.google.common.base.Strings;
+import org.apache.flume.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * @Author TomAndersen
+ * @Date 2026/10/19
+ * @Version
+ * @Description: 支持热加载的拦截器规则.
+ * <p>
+ * 规则由Flume配置中的参数编译为不可变对象,读取时只有一次volatile读,热路径上没有锁.
+ * 如果配置了rulesFile,则定期检查此本地properties文件的修改时间,文件变化后将文件中的参数覆盖到
+ * Flume配置之上重新编译,编译成功后原子替换当前规则(copy-on-write),编译失败则保留旧规则,
+ * 因此修改校验或路由参数不再需要重新部署jar包并重启Agent.
+ * <p>
+ * 配置示例:
+ * <pre>
+ *     a1.sources.r1.interceptors.i2.rulesFile = /opt/module/flume/conf/projection.properties
+ *     a1.sources.r1.interceptors.i2.rulesCheckInterval = 5
+ * </pre>
+ */
+public final class ReloadableRules<T> implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ReloadableRules.class);
+
+    // 配置项以及默认值
+    public static final String RULES_FILE_KEY = "rulesFile";
+    public static final String RULES_CHECK_INTERVAL_KEY = "rulesCheckInterval";
+    public static final long DEFAULT_RULES_CHECK_INTERVAL = 5;
+
+    // 所有拦截器共享一个守护线程检查规则文件
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "interceptor-rules-reloader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Flume配置中的原始参数
+    private final Map<String, String> baseParameters;
+    // 规则编译器,输入合并后的配置,输出不可变规则对象
+    private final Function<Context, T> compiler;
+    // 规则文件,为null时不进行热加载
+    private final File rulesFile;
+    private final long checkIntervalSeconds;
+    // 当前生效的规则
+    private volatile T rules;
+    private long lastModified;
+    private ScheduledFuture<?> future;
+
+    private ReloadableRules(Context context, Function<Context, T> compiler) {
+        this.baseParameters = new HashMap<>(context.getParameters());
+        this.compiler = compiler;
+        String path = context.getString(RULES_FILE_KEY);
+        this.rulesFile = Strings.isNullOrEmpty(path) ? null : new File(path);
+        this.checkIntervalSeconds = context.getLong(RULES_CHECK_INTERVAL_KEY, DEFAULT_RULES_CHECK_INTERVAL);
+    }
+
+    /**
+     * 根据Flume配置创建规则,并立即编译一次.
+     * 配置错误或规则文件存在但无法编译时直接抛出异常,使Agent在启动时就发现问题.
+     */
+    public static <T> ReloadableRules<T> create(Context context, Function<Context, T> compiler) {
+        ReloadableRules<T> reloadable = new ReloadableRules<>(context, compiler);
+        reloadable.rules = compiler.apply(reloadable.mergedContext());
+        return reloadable;
+    }
+
+    // 使用固定规则创建,不进行热加载
+    public static <T> ReloadableRules<T> of(T rules) {
+        ReloadableRules<T> reloadable = new ReloadableRules<>(new Context(), context -> rules);
+        reloadable.rules = rules;
+        return reloadable;
+    }
+
+    // 获取当前生效的规则,热路径上调用
+    public T get() {
+        return rules;
+    }
+
+    // 开始定期检查规则文件
+    public synchronized void start() {
+        if (rulesFile == null || future != null) return;
+        future = SCHEDULER.scheduleWithFixedDelay(this::reloadIfModified,
+                checkIntervalSeconds, checkIntervalSeconds, TimeUnit.SECONDS);
+        logger.info("Watching interceptor rules file " + rulesFile + " every " + checkIntervalSeconds + "s");
+    }
+
+    // 停止检查规则文件
+    @Override
+    public synchronized void close() {
+        if (future != null) {
+            future.cancel(false);
+            future = null;
+        }
+    }
+
+    // 检查规则文件是否发生变化,变化则重新编译并替换规则
+    void reloadIfModified() {
+        long modified = rulesFile.lastModified();
+        if (modified == 0 || modified == lastModified) return;
+        try {
+            T compiled = compiler.apply(mergedContext());
+            rules = compiled;
+            logger.info("Reloaded interceptor rules from " + rulesFile);
+        } catch (RuntimeException e) {
+            logger.warn("Invalid interceptor rules in " + rulesFile + ", keeping previous rules", e);
+        }
+        // 无论成功与否都记录修改时间,避免对同一个错误文件反复报警
+        lastModified = modified;
+    }
+
+    // 将规则文件中的参数覆盖到Flume配置之上
+    private Context mergedContext() {
+        Map<String, String> parameters = new HashMap<>(baseParameters);
+        if (rulesFile != null && rulesFile.isFile()) {
+            lastModified = rulesFile.lastModified();
+            Properties properties = new Properties();
+            try (Reader reader = new InputStreamReader(new FileInputStream(rulesFile), StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Unable to read rules file " + rulesFile, e);
+            }
+            for (String name : properties.stringPropertyNames()) {
+                parameters.put(name, properties.getProperty(name).trim());
+            }
+        }
+        return new Context(parameters);
+    }
+}
@@ -0,0 +1,144 @@
+package com.tomandersen.interceptors;
+
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.event.EventBuilder;
+import org.apache.flume.interceptor.Interceptor;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * @Author TomAndersen
+ * @Date 2026/10/19
+ * @Version
+ * @Description: 测试FieldProjectionInterceptor的白名单/黑名单投影、嵌套路径、转义字符串、服务器时间前缀
+ * 以及格式错误时原样放行.
+ */
+public class FieldProjectionInterceptorTest {
+    private static final String PREFIX = "1583769600000|";
+
+    @Test
+    public void testExcludeTopLevelAndNestedFields() {
+        FieldProjectionInterceptor interceptor = excludes("cm.g", "ap");
+        assertEquals("{\"cm\":{\"mid\":\"m1\",\"uid\":\"u1\"},\"et\":[]}",
+                project(interceptor, "{\"cm\":{\"mid\":\"m1\",\"g\":\"x@y\",\"uid\":\"u1\"},\"ap\":\"app\",\"et\":[]}"));
+    }
+
+    @Test
+    public void testIncludeKeepsOnlyConfiguredPaths() {
+        FieldProjectionInterceptor interceptor = includes("cm.mid", "ap");
+        assertEquals("{\"cm\":{\"mid\":\"m1\"},\"ap\":\"app\"}",
+                project(interceptor, "{\"cm\":{\"mid\":\"m1\",\"g\":\"x\"},\"ap\":\"app\",\"et\":[{\"en\":\"a\"}]}"));
+    }
+
+    @Test
+    public void testPathsApplyToEveryArrayElement() {
+        FieldProjectionInterceptor interceptor = excludes("et.kv.content");
+        assertEquals("{\"et\":[{\"en\":\"a\",\"kv\":{\"id\":1}},{\"en\":\"b\",\"kv\":{}}]}",
+                project(interceptor, "{\"et\":[{\"en\":\"a\",\"kv\":{\"id\":1,\"content\":\"long\"}},"
+                        + "{\"en\":\"b\",\"kv\":{\"content\":[1,2]}}]}"));
+
+        interceptor = includes("et.en");
+        assertEquals("{\"et\":[{\"en\":\"a\"},{\"en\":\"b\"}]}",
+                project(interceptor, "{\"et\":[{\"en\":\"a\",\"kv\":{}},{\"en\":\"b\",\"ett\":\"1\"}],\"ap\":\"x\"}"));
+    }
+
+    @Test
+    public void testEscapedStringsAreCopiedVerbatim() {
+        FieldProjectionInterceptor interceptor = excludes("b");
+        String value = "\"x\\\"}{,\\\\\\u00e9\"";
+        assertEquals("{\"a\":" + value + ",\"c\":null}",
+                project(interceptor, "{\"a\":" + value + ",\"b\":\"y\\\"\",\"c\":null}"));
+    }
+
+    @Test
+    public void testServerTimePrefixIsPreserved() {
+        FieldProjectionInterceptor interceptor = excludes("cm");
+        assertEquals(PREFIX + "{\"ap\":\"app\"}", project(interceptor, PREFIX + "{\"cm\":{\"mid\":\"m1\"}, \"ap\":\"app\"}"));
+    }
+
+    @Test
+    public void testMemberWhitespaceIsDroppedAndTrailingWhitespaceAllowed() {
+        // 成员之间的空白被去掉,直接复制的Value保持原样
+        FieldProjectionInterceptor interceptor = excludes("b");
+        assertEquals("{\"a\":[1, 2]}", project(interceptor, " { \"a\" : [1, 2] , \"b\" : 2 }\n"));
+    }
+
+    @Test
+    public void testMalformedOrTrailingContentPassesThrough() {
+        FieldProjectionInterceptor interceptor = excludes("b");
+        for (String body : Arrays.asList(
+                "{\"a\":1,\"b\":2",
+                "{\"a\":1,\"b\":}",
+                "[{\"a\":1,\"b\":2}]",
+                "not json",
+                "{\"a\":1,\"b\":2}garbage",
+                "{\"a\":1,\"b\":2}{\"a\":3,\"b\":4}",
+                "{\"a\":1,\"b\":2}\n{\"a\":3,\"b\":4}\n",
+                PREFIX + "{\"a\":1,\"b\":2} x}")) {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            Event event = EventBuilder.withBody(bytes);
+            assertSame(body, event, interceptor.intercept(event));
+            assertSame(body, bytes, event.getBody());
+        }
+        Event empty = EventBuilder.withBody(new byte[0]);
+        assertEquals(0, interceptor.intercept(empty).getBody().length);
+    }
+
+    @Test
+    public void testUnchangedBodyIsNotCopied() {
+        FieldProjectionInterceptor interceptor = excludes("missing");
+        byte[] bytes = "{\"a\":1}".getBytes(StandardCharsets.UTF_8);
+        Event event = EventBuilder.withBody(bytes);
+        interceptor.intercept(event);
+        assertSame(bytes, event.getBody());
+    }
+
+    @Test
+    public void testBuilderRequiresExactlyOneRuleList() {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(FieldProjectionInterceptor.EXCLUDES_KEY, " cm.g , ap ");
+        Interceptor interceptor = build(properties);
+        assertEquals("{\"cm\":{}}", project(interceptor, "{\"cm\":{\"g\":1},\"ap\":2}"));
+
+        properties.put(FieldProjectionInterceptor.INCLUDES_KEY, "cm");
+        try {
+            build(properties);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // includes和excludes不能同时配置
+        }
+        try {
+            build(Collections.emptyMap());
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // 必须配置其一
+        }
+    }
+
+    private static FieldProjectionInterceptor includes(String... paths) {
+        return new FieldProjectionInterceptor(Arrays.asList(paths), true);
+    }
+
+    private static FieldProjectionInterceptor excludes(String... paths) {
+        return new FieldProjectionInterceptor(Arrays.asList(paths), false);
+    }
+
+    private static Interceptor build(Map<String, String> properties) {
+        FieldProjectionInterceptor.Builder builder = new FieldProjectionInterceptor.Builder();
+        builder.configure(new Context(properties));
+        return builder.build();
+    }
+
+    private static String project(Interceptor interceptor, String body) {
+        Event event = interceptor.intercept(EventBuilder.withBody(body.getBytes(StandardCharsets.UTF_8)));
+        return new String(event.getBody(), StandardCharsets.UTF_8);
+    }
+}
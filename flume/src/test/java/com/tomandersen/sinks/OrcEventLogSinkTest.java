@@ -0,0 +1,324 @@
+package com.tomandersen.sinks;
+
+import org.apache.flume.*;
+import org.apache.flume.channel.AbstractChannel;
+import org.apache.flume.channel.MemoryChannel;
+import org.apache.flume.conf.Configurables;
+import org.apache.flume.event.EventBuilder;
+import org.apache.flume.lifecycle.LifecycleState;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.orc.OrcFile;
+import org.apache.orc.Reader;
+import org.apache.orc.RecordReader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * @Author TomAndersen
+ * @Date 2026/10/19
+ * @Version
+ * @Description: 通过file:///在本地文件系统上测试OrcEventLogSink的提交、滚动以及事务回滚.
+ */
+public class OrcEventLogSinkTest {
+    private static final long BASE_TIME = 1583769600000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FailingChannel channel;
+    private OrcEventLogSink sink;
+    private int nextEvent = 0;
+
+    @Before
+    public void setUp() {
+        channel = new FailingChannel();
+        channel.start();
+    }
+
+    @After
+    public void tearDown() {
+        if (sink != null && sink.getLifecycleState() == LifecycleState.START) sink.stop();
+        channel.stop();
+    }
+
+    @Test
+    public void testCommitPublishesOnStop() throws Exception {
+        startSink(new HashMap<>());
+        put(4);
+        assertEquals(Sink.Status.READY, sink.process());
+        // 提交后文件仍在写入,只有隐藏的临时文件
+        assertTrue(finalFiles().isEmpty());
+        assertEquals(1, inUseFiles().size());
+        assertEquals(Sink.Status.BACKOFF, sink.process());
+
+        sink.stop();
+        assertTrue(inUseFiles().isEmpty());
+        assertEquals(1, finalFiles().size());
+        assertRows(range(0, 4), readServerTimes());
+    }
+
+    @Test
+    public void testRollByInterval() throws Exception {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(OrcEventLogSink.ROLL_INTERVAL_KEY, "1");
+        startSink(properties);
+        put(12);
+        sink.process();
+        sink.process();
+        assertTrue(finalFiles().isEmpty());
+        // 超过rollInterval后的第一次提交之后关闭文件,之后的批次写入新文件
+        Thread.sleep(1100);
+        sink.process();
+        assertTrue(inUseFiles().isEmpty());
+        assertEquals(1, finalFiles().size());
+        assertEquals(12, reader(finalFiles().get(0)).getNumberOfRows());
+
+        put(3);
+        sink.process();
+        sink.stop();
+        List<Long> rowsPerFile = new ArrayList<>();
+        for (File file : finalFiles()) rowsPerFile.add(reader(file).getNumberOfRows());
+        Collections.sort(rowsPerFile);
+        assertEquals(Arrays.asList(3L, 12L), rowsPerFile);
+        assertRows(range(0, 15), readServerTimes());
+    }
+
+    @Test
+    public void testRollbackBeforeRowsReachWriter() throws Exception {
+        startSink(new HashMap<>());
+        put(12);
+        sink.process();
+        // 第二个批次取出2条后失败,这2条只在内存中,回滚后不会写入文件
+        channel.failTakeAfter = 2;
+        try {
+            sink.process();
+            fail("Expected EventDeliveryException");
+        } catch (EventDeliveryException expected) {
+            // 事务已回滚
+        }
+        channel.failTakeAfter = -1;
+        sink.process();
+        sink.process();
+        sink.stop();
+
+        // Writer继续使用,所有行只写入一次
+        assertEquals(1, finalFiles().size());
+        assertRows(range(0, 12), readServerTimes());
+    }
+
+    @Test
+    public void testRollbackAfterRowsReachWriter() throws Exception {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(OrcEventLogSink.SYNC_INTERVAL_KEY, "1");
+        startSink(properties);
+        put(15);
+        sink.process();
+        // 超过syncInterval后第二个批次提交时同步,同步位置包含前两个批次
+        Thread.sleep(1100);
+        sink.process();
+        // 第三个批次已交给ORC Writer后提交失败,Writer被放弃,文件回退到同步位置并发布
+        channel.failCommit = true;
+        try {
+            sink.process();
+            fail("Expected EventDeliveryException");
+        } catch (EventDeliveryException expected) {
+            // 事务已回滚
+        }
+        assertTrue(inUseFiles().isEmpty());
+        assertEquals(1, finalFiles().size());
+        assertRows(range(0, 10), readServerTimes());
+
+        // 回滚的批次重新取出后写入新文件,没有重复
+        channel.failCommit = false;
+        sink.process();
+        sink.stop();
+        assertEquals(2, finalFiles().size());
+        assertRows(range(0, 15), readServerTimes());
+    }
+
+    @Test
+    public void testSyncBeforeCommitRevertsOnRollback() throws Exception {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(OrcEventLogSink.SYNC_INTERVAL_KEY, "0");
+        properties.put(OrcEventLogSink.MAX_UNSYNCED_ROWS_KEY, "0");
+        startSink(properties);
+        put(15);
+        // 每个批次都在提交前同步,无需等待syncInterval
+        sink.process();
+        sink.process();
+        // 第三个批次同步后提交失败,文件回退到本批次之前的同步位置,回滚的行不会发布
+        channel.failCommit = true;
+        try {
+            sink.process();
+            fail("Expected EventDeliveryException");
+        } catch (EventDeliveryException expected) {
+            // 事务已回滚
+        }
+        assertTrue(inUseFiles().isEmpty());
+        assertEquals(1, finalFiles().size());
+        assertRows(range(0, 10), readServerTimes());
+
+        channel.failCommit = false;
+        sink.process();
+        sink.stop();
+        assertRows(range(0, 15), readServerTimes());
+    }
+
+    private void startSink(Map<String, String> properties) {
+        Map<String, String> all = new HashMap<>();
+        all.put(OrcEventLogSink.PATH_KEY, folder.getRoot().toURI().toString());
+        all.put(OrcEventLogSink.BATCH_SIZE_KEY, "5");
+        all.put(OrcEventLogSink.TIME_ZONE_KEY, "UTC");
+        all.putAll(properties);
+        sink = new OrcEventLogSink();
+        sink.setName("orc-sink");
+        Configurables.configure(sink, new Context(all));
+        sink.setChannel(channel);
+        sink.start();
+    }
+
+    // 向Channel中放入指定条数的事件日志,服务器时间依次递增
+    private void put(int count) {
+        Transaction transaction = channel.getTransaction();
+        transaction.begin();
+        for (int i = 0; i < count; i++, nextEvent++) {
+            String body = (BASE_TIME + nextEvent) + "|{\"cm\":{\"mid\":\"" + nextEvent + "\",\"uid\":\"u\"},"
+                    + "\"ap\":\"app\",\"et\":[{\"en\":\"display\"}]}";
+            channel.put(EventBuilder.withBody(body.getBytes(StandardCharsets.UTF_8)));
+        }
+        transaction.commit();
+        transaction.close();
+    }
+
+    private static List<Long> range(int from, int to) {
+        List<Long> list = new ArrayList<>();
+        for (int i = from; i < to; i++) list.add(BASE_TIME + i);
+        return list;
+    }
+
+    private static void assertRows(List<Long> expected, List<Long> actual) {
+        List<Long> sorted = new ArrayList<>(actual);
+        Collections.sort(sorted);
+        assertEquals(expected, sorted);
+    }
+
+    private List<Long> readServerTimes() throws IOException {
+        List<Long> times = new ArrayList<>();
+        for (File file : finalFiles()) {
+            Reader reader = reader(file);
+            VectorizedRowBatch batch = reader.getSchema().createRowBatch();
+            try (RecordReader rows = reader.rows()) {
+                while (rows.nextBatch(batch)) {
+                    LongColumnVector serverTime = (LongColumnVector) batch.cols[0];
+                    for (int i = 0; i < batch.size; i++) times.add(serverTime.vector[i]);
+                }
+            }
+        }
+        return times;
+    }
+
+    private static Reader reader(File file) throws IOException {
+        return OrcFile.createReader(new Path(file.toURI()), OrcFile.readerOptions(new Configuration()));
+    }
+
+    private List<File> finalFiles() throws IOException {
+        return files(name -> name.endsWith(".orc") && !name.startsWith("_") && !name.startsWith("."));
+    }
+
+    private List<File> inUseFiles() throws IOException {
+        return files(name -> name.startsWith("_"));
+    }
+
+    private List<File> files(java.util.function.Predicate<String> filter) throws IOException {
+        try (Stream<java.nio.file.Path> stream = Files.walk(folder.getRoot().toPath())) {
+            return stream.filter(Files::isRegularFile)
+                    .filter(path -> filter.test(path.getFileName().toString()))
+                    .map(java.nio.file.Path::toFile)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * 包装MemoryChannel,可以让take()在取出指定条数后失败,或者让事务提交失败
+     */
+    private static class FailingChannel extends AbstractChannel {
+        private final MemoryChannel delegate = new MemoryChannel();
+        private int failTakeAfter = -1;
+        private boolean failCommit = false;
+        private int taken = 0;
+
+        FailingChannel() {
+            Map<String, String> properties = new HashMap<>();
+            properties.put("capacity", "1000");
+            properties.put("transactionCapacity", "100");
+            Configurables.configure(delegate, new Context(properties));
+        }
+
+        @Override
+        public synchronized void start() {
+            delegate.start();
+            super.start();
+        }
+
+        @Override
+        public synchronized void stop() {
+            delegate.stop();
+            super.stop();
+        }
+
+        @Override
+        public void put(Event event) throws ChannelException {
+            delegate.put(event);
+        }
+
+        @Override
+        public Event take() throws ChannelException {
+            if (failTakeAfter >= 0 && taken++ >= failTakeAfter) throw new ChannelException("Injected take failure");
+            return delegate.take();
+        }
+
+        @Override
+        public Transaction getTransaction() {
+            Transaction transaction = delegate.getTransaction();
+            taken = 0;
+            return new Transaction() {
+                @Override
+                public void begin() {
+                    transaction.begin();
+                }
+
+                @Override
+                public void commit() {
+                    if (failCommit) throw new ChannelException("Injected commit failure");
+                    transaction.commit();
+                }
+
+                @Override
+                public void rollback() {
+                    transaction.rollback();
+                }
+
+                @Override
+                public void close() {
+                    transaction.close();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.tomandersen.kafka.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <h3>ConsumerRunner的批次处理接口.</h3>
+ * 每次批次刷新时由{@link ConsumerRunner}调用,直接接收poll()返回的原始ConsumerRecord,
+ * Runner本身不做任何复制或字符串转换.只有handle()正常返回后Runner才会提交该批次的Offset,
+ * 抛出异常时不提交,Runner随即退出,未提交的消息会在重启或Rebalance后重新消费.
+ * <p>
+ * 传入的List是只读视图,可能在handle()返回后被Runner复用,因此不能在handle()返回后继续持有.
+ * 流水线模式下每次只传入同一Partition的消息,并且会在多个Worker线程中并发调用,实现需要保证线程安全.
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see ConsumerRunner
+ */
+@FunctionalInterface
+public interface BatchHandler<K, V> {
+
+    /**
+     * 处理一个批次的消息
+     *
+     * @param batch 按Partition内Offset顺序排列的消息
+     * @throws Exception 处理失败,该批次的Offset不会被提交
+     */
+    void handle(List<ConsumerRecord<K, V>> batch) throws Exception;
+
+    /**
+     * 将每条消息转换为"topic:...,partition:...,offset:...,key:...,value:..."格式并输出到控制台,
+     * 仅用于调试和演示,即原ConsumerRunner的默认消费方式
+     */
+    static <K, V> BatchHandler<K, V> printing() {
+        return batch -> {
+            List<String> lines = new ArrayList<>(batch.size());
+            for (ConsumerRecord<K, V> record : batch) {
+                lines.add("topic:" + record.topic()
+                        + ",partition:" + record.partition()
+                        + ",offset:" + record.offset()
+                        + ",key:" + record.key()
+                        + ",value:" + record.value());
+            }
+            System.out.println(lines);
+        };
+    }
+}
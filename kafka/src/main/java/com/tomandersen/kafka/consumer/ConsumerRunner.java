@@ -1,46 +1,213 @@
 package com.tomandersen.kafka.consumer;
 
 import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.WakeupException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <h3>此类专门用于提供多线程MultiThread运行Consumer的方式.</h3>
  * 通过创建ConsumerRunner实例,将其放入Thread线程对象中并调用start()方法
  * 就将Consumer以多线程的方式启动
+ * <p>
+ * 攒批模式下缓冲区中最早一条消息的等待时间不超过maxIntervalMills:poll()的超时时间由距离该截止时间的剩余时间决定,
+ * 而不是固定值,因此不会在截止时间之后继续阻塞,也不需要忙等.还可以通过{@link #withFlushTimer(long)}设置
+ * 独立的固定周期刷新,无论批次何时开始,每个周期结束时都会处理缓冲区中的消息.
+ * <p>
+ * 消息的具体处理方式由{@link BatchHandler}指定,Runner只缓存poll()返回的ConsumerRecord引用,
+ * 不做复制或字符串转换,并且只在BatchHandler成功返回后提交Offset.未指定时使用{@link BatchHandler#printing()}.
+ * <p>
+ * 指定workerThreads大于0时使用流水线模式:当前线程只负责poll,每个Partition拉取到的消息交给
+ * 按Partition固定分配的单线程Worker处理,处理期间暂停(pause)该Partition的拉取以保证Partition内有序,
+ * 处理完成后恢复拉取,并且只提交已处理完成的消息的Offset.这样处理耗时不会阻塞poll(),
+ * 不会因超过max.poll.interval.ms而被踢出ConsumerGroup,单个Consumer也能利用多个CPU核心.
+ * 流水线模式不攒批,maxBatchSize只限制每次交给BatchHandler的条数,maxIntervalMills不起作用.
+ * <p>
+ * 通过{@link #withBackpressure}设置内存积压(已拉取但尚未处理完成的消息)的高低水位:积压条数或字节数
+ * 超过高水位时暂停(pause)所有已分配的Partition,但仍继续调用poll()以保持在ConsumerGroup中,
+ * 积压条数和字节数都降到低水位以下时恢复(resume),因此无论下游多慢,内存占用都有上限.
+ * <p>
+ * run()开始时会以当前订阅的Topic重新订阅并注册{@link ConsumerRebalanceListener},Partition被回收前先处理
+ * 缓冲区中的消息(流水线模式下等待正在处理的消息完成)并同步提交Offset,避免新的所有者重复消费.
+ * 因此Consumer应通过subscribe(Collection)订阅Topic,通过Pattern订阅时会被替换为当前匹配到的Topic.
+ * <p>
+ * 运行期间将{@link ConsumerRunnerMetrics}注册到JMX,包括poll耗时、每次poll的消息条数、BatchHandler处理耗时、
+ * Offset提交耗时以及各Partition的Lag.Lag由Consumer自身的position与endOffsets计算,每隔lagRefreshMills刷新一次.
  *
  * @author TomAndersen
  * @version 1.0
  * @date 2020/3/14
  * @see KafkaConsumer
  */
-public class ConsumerRunner implements Runnable {
+public class ConsumerRunner<K, V> implements Runnable {
+    // 缓冲区为空时poll()的最长阻塞时间
+    private static final long MAX_POLL_TIMEOUT_MILLS = 1000;
+    // 流水线模式下有Partition正在处理时poll()的超时时间,以便及时恢复处理完成的Partition
+    private static final long IN_FLIGHT_POLL_TIMEOUT_MILLS = 10;
     // 提供原子操作的Boolean对象
     private final AtomicBoolean closed = new AtomicBoolean(false);
     // Kafka Consumer
-    private final Consumer consumer;
-    // 批次缓冲区,每条消息作为一个缓冲对象
-    private final List<String> batchBuffer;
+    private final Consumer<K, V> consumer;
+    // 批次处理方式
+    private final BatchHandler<K, V> handler;
+    // 批次缓冲区,只保存ConsumerRecord引用
+    private final List<ConsumerRecord<K, V>> batchBuffer;
+    // 批次缓冲区的只读视图,传递给BatchHandler
+    private final List<ConsumerRecord<K, V>> batchView;
     // 批次大小,即每批最多消费记录数
     private final int maxBatchSize;
     // 消费周期(second),即消费最长等待时间
     private final long maxIntervalMills;
+    // 独立的固定刷新周期,0表示不启用
+    private long flushTimerMills = 0;
+    // 运行状态,供ConsumerRunnerGroup等外部线程查询
+    private volatile State state = State.CREATED;
+    // 导致运行失败的异常
+    private volatile Throwable failure;
+    // 已消费的消息总数
+    private volatile long consumedCount = 0;
+    // 流水线模式的Worker个数,0表示在poll线程中直接处理
+    private final int workerThreads;
+    // 流水线模式下的Worker,每个Worker为单线程线程池,同一Partition总是交给同一个Worker
+    private ExecutorService[] workers;
+    // 流水线模式下正在处理的Partition,仅由poll线程访问
+    private final Map<TopicPartition, Future<?>> inFlight = new HashMap<>();
+    // 流水线模式下已处理完成、等待提交的Offset
+    private final ConcurrentMap<TopicPartition, OffsetAndMetadata> completed = new ConcurrentHashMap<>();
+    // Offset提交,仅在poll线程中使用
+    private final OffsetCommitter committer;
+    // 背压的高低水位,默认不限制
+    private long highWatermarkRecords = Long.MAX_VALUE;
+    private long lowWatermarkRecords = Long.MAX_VALUE;
+    private long highWatermarkBytes = Long.MAX_VALUE;
+    private long lowWatermarkBytes = Long.MAX_VALUE;
+    // 内存中积压的消息条数以及字节数,流水线模式下由Worker线程减少
+    private final AtomicLong backlogRecords = new AtomicLong();
+    private final AtomicLong backlogBytes = new AtomicLong();
+    // 是否因背压暂停了所有Partition,仅由poll线程修改
+    private volatile boolean backpressured = false;
+    // 运行指标
+    private final ConsumerRunnerMetrics metrics = new ConsumerRunnerMetrics(this);
+    // JMX中的名称,默认为运行线程名
+    private String metricsName;
+    // Lag刷新周期以及直方图统计窗口
+    private long lagRefreshMills = 30000;
+    private long metricsWindowMills = 60000;
+    private long nextLagRefresh = 0;
+    private long nextMetricsRotate = 0;
+    // Rebalance回调中出现的异常,KafkaConsumer会吞掉回调抛出的异常,因此在poll返回后重新抛出
+    private RuntimeException rebalanceFailure;
 
+    /**
+     * ConsumerRunner的运行状态
+     */
+    public enum State {
+        // 已创建但尚未运行
+        CREATED,
+        // 正在运行
+        RUNNING,
+        // 正常关闭
+        CLOSED,
+        // 因异常退出
+        FAILED
+    }
+
+
+    public ConsumerRunner(Consumer<K, V> consumer, int maxBatchSize, long maxIntervalMills) {
+        this(consumer, maxBatchSize, maxIntervalMills, 0);
+    }
+
+    public ConsumerRunner(Consumer<K, V> consumer, int maxBatchSize, long maxIntervalMills, int workerThreads) {
+        this(consumer, BatchHandler.printing(), maxBatchSize, maxIntervalMills, workerThreads);
+    }
 
-    public ConsumerRunner(Consumer consumer, int maxBatchSize, long maxIntervalMills) {
+    /**
+     * 攒批模式下缓冲区达到maxBatchSize条或最早一条消息等待maxIntervalMills后处理.
+     * 流水线模式下不攒批,每次poll拉取到的消息立即按Partition交给Worker,maxBatchSize只限制每次交给
+     * BatchHandler的条数(一个Partition的消息超过时按顺序分段处理),maxIntervalMills不起作用,
+     * 每批的大小由max.poll.records及拉取时Partition中已有的消息决定.
+     *
+     * @param handler          批次处理方式
+     * @param maxBatchSize     每次交给BatchHandler的最大消息条数
+     * @param maxIntervalMills 攒批模式下消息在缓冲区中的最长等待时间,流水线模式下不使用
+     * @param workerThreads    流水线模式的Worker个数,0表示在poll线程中直接处理
+     */
+    public ConsumerRunner(Consumer<K, V> consumer, BatchHandler<K, V> handler,
+                          int maxBatchSize, long maxIntervalMills, int workerThreads) {
+        if (handler == null) throw new IllegalArgumentException("handler must not be null");
+        if (workerThreads < 0) throw new IllegalArgumentException("workerThreads must not be negative");
+        if (maxBatchSize <= 0) throw new IllegalArgumentException("maxBatchSize must be greater than 0");
         this.batchBuffer = new ArrayList<>();
+        this.batchView = Collections.unmodifiableList(batchBuffer);
         this.consumer = consumer;
+        this.handler = handler;
+        this.committer = new OffsetCommitter(consumer, metrics);
         this.maxBatchSize = maxBatchSize;
         this.maxIntervalMills = maxIntervalMills;
+        this.workerThreads = workerThreads;
+    }
+
+    /**
+     * 设置背压的高水位,低水位为高水位的一半,需要在run()之前调用
+     *
+     * @param highWatermarkRecords 积压消息条数的高水位
+     * @param highWatermarkBytes   积压消息字节数(Key和Value序列化后的大小)的高水位
+     */
+    public ConsumerRunner<K, V> withBackpressure(long highWatermarkRecords, long highWatermarkBytes) {
+        return withBackpressure(highWatermarkRecords, highWatermarkRecords / 2,
+                highWatermarkBytes, highWatermarkBytes / 2);
+    }
+
+    /**
+     * 设置背压的高低水位,需要在run()之前调用
+     */
+    public ConsumerRunner<K, V> withBackpressure(long highWatermarkRecords, long lowWatermarkRecords,
+                                                 long highWatermarkBytes, long lowWatermarkBytes) {
+        if (highWatermarkRecords <= 0 || highWatermarkBytes <= 0)
+            throw new IllegalArgumentException("High watermarks must be greater than 0");
+        if (lowWatermarkRecords > highWatermarkRecords || lowWatermarkBytes > highWatermarkBytes)
+            throw new IllegalArgumentException("Low watermarks must not exceed high watermarks");
+        this.highWatermarkRecords = highWatermarkRecords;
+        this.lowWatermarkRecords = lowWatermarkRecords;
+        this.highWatermarkBytes = highWatermarkBytes;
+        this.lowWatermarkBytes = lowWatermarkBytes;
+        return this;
+    }
+
+    /**
+     * 设置独立的固定刷新周期,每个周期结束时处理缓冲区中的所有消息,需要在run()之前调用
+     *
+     * @param flushTimerMills 刷新周期,0表示不启用
+     */
+    public ConsumerRunner<K, V> withFlushTimer(long flushTimerMills) {
+        if (flushTimerMills < 0) throw new IllegalArgumentException("flushTimerMills must not be negative");
+        this.flushTimerMills = flushTimerMills;
+        return this;
+    }
+
+    /**
+     * 设置JMX指标名称以及Lag刷新周期,需要在run()之前调用
+     *
+     * @param name            JMX中的名称,为null时使用运行线程名
+     * @param lagRefreshMills Lag刷新周期
+     */
+    public ConsumerRunner<K, V> withMetrics(String name, long lagRefreshMills) {
+        if (lagRefreshMills <= 0) throw new IllegalArgumentException("lagRefreshMills must be greater than 0");
+        this.metricsName = name;
+        this.lagRefreshMills = lagRefreshMills;
+        return this;
     }
 
     /**
@@ -56,50 +223,389 @@ public class ConsumerRunner implements Runnable {
      */
     @Override
     public void run() {
+        state = State.RUNNING;
+        metrics.register(metricsName != null ? metricsName : Thread.currentThread().getName());
         try {
             // 如果Consumer未订阅消息则打印日志,并且关闭当前Consumer
             if (consumer.subscription().size() == 0) {
                 Logger logger = LoggerFactory.getLogger(ConsumerRunner.class);
                 logger.warn("This kafka consumer doesn't subscribe any topic and will be closed!");
                 shutdown();
+            } else {
+                // 重新订阅以注册Rebalance回调
+                consumer.subscribe(new ArrayList<>(consumer.subscription()), new RebalanceListener());
             }
-            // 获取当前系统时间
-            long timer = System.currentTimeMillis();
+            if (workerThreads > 0) runPipelined();
+            else runBatched();
+        } catch (WakeupException e) {
+            // Ignore exception if closing
+            if (!closed.get()) {
+                fail(e);
+                throw e;
+            }
+        } catch (RuntimeException | Error e) {
+            fail(e);
+            throw e;
+        } finally {
+            consumer.close();
+            if (state != State.FAILED) state = State.CLOSED;
+            metrics.unregister();
+        }
+    }
+
+    // 在poll线程中攒批处理
+    private void runBatched() {
+        try {
+            // 缓冲区中最早一条消息的刷新截止时间,以及下一次固定周期刷新的时间
+            long batchDeadline = Long.MAX_VALUE;
+            long nextTimerFlush = flushTimerMills > 0 ? System.currentTimeMillis() + flushTimerMills : Long.MAX_VALUE;
             while (!closed.get()) {
-                // 每1000ms获取一次消息
-                ConsumerRecords<?, ?> records = consumer.poll(Duration.ofMillis(1000));
+                // poll()最多阻塞到最近的刷新时间,缓冲区可能已在Rebalance回调中被处理
+                if (batchBuffer.isEmpty()) batchDeadline = Long.MAX_VALUE;
+                long deadline = Math.min(batchDeadline, nextTimerFlush);
+                long timeout = Math.max(0, Math.min(MAX_POLL_TIMEOUT_MILLS, deadline - System.currentTimeMillis()));
+                ConsumerRecords<K, V> records;
+                try {
+                    records = poll(Duration.ofMillis(timeout));
+                } catch (WakeupException e) {
+                    if (closed.get()) break;
+                    throw e;
+                }
+                checkRebalanceFailure();
                 // Handle new records
-                // 将需要消费的消息存入缓冲区
-                for (ConsumerRecord record : records) {
-                    batchBuffer.add("topic:" + record.topic()
-                            + ",partition:" + record.partition()
-                            + ",offset:" + record.offset()
-                            + ",key:" + record.key()
-                            + ",value:" + record.value());
+                // 将需要消费的消息引用存入缓冲区,空缓冲区收到第一批消息时开始计时
+                long now = System.currentTimeMillis();
+                if (batchBuffer.isEmpty() && !records.isEmpty()) batchDeadline = now + maxIntervalMills;
+                consumedCount += records.count();
+                for (ConsumerRecord<K, V> record : records) {
+                    batchBuffer.add(record);
                 }
-                // 如果缓冲区达到最大批次大小或者非空却到达最大消费周期,则输出消息,并刷新缓冲区
+                acquireBacklog(records);
+                // 如果缓冲区达到最大批次大小,或者非空却到达截止时间或固定刷新时间,则处理消息,并刷新缓冲区
+                boolean timerDue = now >= nextTimerFlush;
                 if (batchBuffer.size() >= maxBatchSize ||
-                        (batchBuffer.size() != 0 && (System.currentTimeMillis() - timer) >= maxIntervalMills)) {
-                    // 此处为具体的消费方式
-                    // 可以打印到控制台,或者存入数据库等等
-                    System.out.println(batchBuffer);
-                    // 向Kafka集群手动提交Offset
-                    consumer.commitAsync();
-                    // 刷新批次缓冲区
-                    batchBuffer.clear();
-                    // 刷新计时器
-                    timer = System.currentTimeMillis();
+                        (batchBuffer.size() != 0 && (now >= batchDeadline || timerDue))) {
+                    flush();
+                    batchDeadline = Long.MAX_VALUE;
                 }
+                if (timerDue) nextTimerFlush = now + flushTimerMills;
+                // 根据积压情况暂停或恢复拉取
+                applyBackpressure();
+                // 上一次提交完成后才发起下一次提交,期间的Offset合并为一个请求
+                committer.maybeCommitAsync();
+                maybeRefreshMetrics();
+            }
+            // 正常关闭时处理缓冲区中剩余的消息
+            flush();
+        } finally {
+            // 同步提交所有已处理完成的消息的Offset
+            commitSyncQuietly();
+        }
+    }
 
+    private ConsumerRecords<K, V> poll(Duration timeout) {
+        long start = System.nanoTime();
+        ConsumerRecords<K, V> records = consumer.poll(timeout);
+        metrics.recordPoll(System.nanoTime() - start, records.count());
+        return records;
+    }
+
+    // 按周期刷新Lag以及结束直方图统计窗口,避免每次poll都请求endOffsets
+    private void maybeRefreshMetrics() {
+        long now = System.currentTimeMillis();
+        if (now >= nextMetricsRotate) {
+            metrics.rotate();
+            nextMetricsRotate = now + metricsWindowMills;
+        }
+        if (now < nextLagRefresh) return;
+        nextLagRefresh = now + lagRefreshMills;
+        Set<TopicPartition> assignment = consumer.assignment();
+        if (assignment.isEmpty()) {
+            metrics.updateLag(Collections.emptyMap());
+            return;
+        }
+        try {
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(assignment, Duration.ofSeconds(5));
+            Map<TopicPartition, Long> lag = new HashMap<>();
+            for (TopicPartition partition : assignment) {
+                Long end = endOffsets.get(partition);
+                if (end == null) continue;
+                lag.put(partition, Math.max(0, end - consumer.position(partition, Duration.ofSeconds(5))));
             }
+            metrics.updateLag(lag);
         } catch (WakeupException e) {
-            // Ignore exception if closing
-            if (!closed.get()) throw e;
+            // shutdown()唤醒时结束运行,其他来源的唤醒下个周期再刷新
+            if (closed.get()) throw e;
+            nextLagRefresh = now;
+        } catch (RuntimeException e) {
+            LoggerFactory.getLogger(ConsumerRunner.class).warn("Failed to refresh consumer lag", e);
+        }
+    }
+
+    // 交由BatchHandler处理缓冲区中的消息,处理成功后才记录其Offset并清空缓冲区
+    private void flush() {
+        if (batchBuffer.isEmpty()) return;
+        handle(batchView);
+        committer.add(batchBuffer);
+        releaseBacklog(batchBuffer);
+        batchBuffer.clear();
+    }
+
+    private void commitSyncQuietly() {
+        try {
+            committer.commitSync();
+        } catch (RuntimeException e) {
+            LoggerFactory.getLogger(ConsumerRunner.class).warn("Failed to commit offsets on shutdown", e);
+        }
+    }
+
+    // 流水线模式:poll线程分发消息,Worker并行处理,poll线程提交已完成的Offset
+    private void runPipelined() {
+        // 1.创建Worker
+        workers = new ExecutorService[workerThreads];
+        for (int i = 0; i < workerThreads; i++) {
+            String name = Thread.currentThread().getName() + "-worker-" + i;
+            workers[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        try {
+            while (!closed.get()) {
+                // 2.拉取消息,有Partition正在处理时缩短超时时间,以便尽快恢复处理完成的Partition.
+                // Worker不调用wakeup()通知完成,否则未被poll消费的wakeup标记会使Rebalance回调中的commitSync失败
+                long timeout = inFlight.isEmpty() ? MAX_POLL_TIMEOUT_MILLS : IN_FLIGHT_POLL_TIMEOUT_MILLS;
+                ConsumerRecords<K, V> records = poll(Duration.ofMillis(timeout));
+                checkRebalanceFailure();
+                consumedCount += records.count();
+                acquireBacklog(records);
+
+                // 3.按Partition分发给Worker,并暂停该Partition直到处理完成
+                for (TopicPartition partition : records.partitions()) {
+                    List<ConsumerRecord<K, V>> partitionRecords = Collections.unmodifiableList(records.records(partition));
+                    consumer.pause(Collections.singletonList(partition));
+                    inFlight.put(partition, workerFor(partition).submit(() -> {
+                        // 每次交给BatchHandler的消息不超过maxBatchSize条,每处理完一段即可提交其Offset
+                        int from = 0;
+                        try {
+                            while (from < partitionRecords.size()) {
+                                int to = Math.min(partitionRecords.size(), from + maxBatchSize);
+                                List<ConsumerRecord<K, V>> chunk = partitionRecords.subList(from, to);
+                                handle(chunk);
+                                completed.put(partition, new OffsetAndMetadata(chunk.get(chunk.size() - 1).offset() + 1));
+                                releaseBacklog(chunk);
+                                from = to;
+                            }
+                        } finally {
+                            // 处理失败时释放剩余消息的积压
+                            releaseBacklog(partitionRecords.subList(from, partitionRecords.size()));
+                        }
+                    }));
+                }
+
+                // 4.恢复已处理完成的Partition,并提交其Offset
+                collectCompleted();
+                applyBackpressure();
+                committer.add(drainCompleted());
+                committer.maybeCommitAsync();
+                maybeRefreshMetrics();
+            }
         } finally {
-            consumer.close();
+            // 5.等待正在处理的消息完成,并同步提交最终的Offset
+            for (ExecutorService worker : workers) worker.shutdown();
+            try {
+                for (ExecutorService worker : workers) worker.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            committer.add(drainCompleted());
+            commitSyncQuietly();
+        }
+    }
+
+    // 同一Partition总是交给同一个Worker,保证Partition内的处理顺序
+    private ExecutorService workerFor(TopicPartition partition) {
+        return workers[(partition.hashCode() & Integer.MAX_VALUE) % workers.length];
+    }
+
+    // 检查处理完成的Partition,成功则恢复拉取,失败则抛出异常
+    private void collectCompleted() {
+        Iterator<Map.Entry<TopicPartition, Future<?>>> iterator = inFlight.entrySet().iterator();
+        Set<TopicPartition> assignment = consumer.assignment();
+        List<TopicPartition> resumable = new ArrayList<>();
+        while (iterator.hasNext()) {
+            Map.Entry<TopicPartition, Future<?>> entry = iterator.next();
+            if (!entry.getValue().isDone()) continue;
+            iterator.remove();
+            try {
+                entry.getValue().get();
+            } catch (ExecutionException e) {
+                throw new RecordProcessingException("Failed to process records of " + entry.getKey(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // 处理期间发生Rebalance时Partition可能已不属于当前Consumer,处于背压状态时由applyBackpressure()统一恢复
+            if (!backpressured && assignment.contains(entry.getKey())) resumable.add(entry.getKey());
+        }
+        if (!resumable.isEmpty()) consumer.resume(resumable);
+    }
+
+    private void checkRebalanceFailure() {
+        if (rebalanceFailure == null) return;
+        RuntimeException e = rebalanceFailure;
+        rebalanceFailure = null;
+        throw e;
+    }
+
+    /**
+     * Partition被回收前处理并提交已拉取的消息,在poll线程中回调
+     */
+    private class RebalanceListener implements ConsumerRebalanceListener {
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            try {
+                if (workers == null) {
+                    // 攒批模式:处理缓冲区中的所有消息
+                    flush();
+                } else {
+                    // 流水线模式:等待被回收的Partition正在处理的消息完成
+                    for (TopicPartition partition : partitions) {
+                        Future<?> future = inFlight.remove(partition);
+                        if (future != null) awaitQuietly(partition, future);
+                    }
+                    committer.add(drainCompleted());
+                }
+                committer.commitSync();
+            } catch (RuntimeException e) {
+                LoggerFactory.getLogger(ConsumerRunner.class).error("Failed to flush revoked partitions " + partitions, e);
+                if (rebalanceFailure == null) rebalanceFailure = e;
+            }
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            // 背压期间新分配的Partition同样需要暂停
+            if (backpressured) consumer.pause(partitions);
+        }
+
+        private void awaitQuietly(TopicPartition partition, Future<?> future) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new RecordProcessingException("Failed to process records of " + partition, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
+    private void acquireBacklog(ConsumerRecords<K, V> records) {
+        long bytes = 0;
+        for (ConsumerRecord<K, V> record : records) bytes += sizeOf(record);
+        backlogRecords.addAndGet(records.count());
+        backlogBytes.addAndGet(bytes);
+    }
+
+    private void releaseBacklog(List<ConsumerRecord<K, V>> records) {
+        long bytes = 0;
+        for (ConsumerRecord<K, V> record : records) bytes += sizeOf(record);
+        backlogRecords.addAndGet(-records.size());
+        backlogBytes.addAndGet(-bytes);
+    }
+
+    // 消息大小取Key和Value序列化后的字节数,为null时大小为-1
+    private static long sizeOf(ConsumerRecord<?, ?> record) {
+        return Math.max(0, record.serializedKeySize()) + Math.max(0, record.serializedValueSize());
+    }
+
+    // 积压超过高水位时暂停所有Partition,降到低水位以下时恢复
+    private void applyBackpressure() {
+        long records = backlogRecords.get();
+        long bytes = backlogBytes.get();
+        if (!backpressured && (records >= highWatermarkRecords || bytes >= highWatermarkBytes)) {
+            backpressured = true;
+            LoggerFactory.getLogger(ConsumerRunner.class).info("Pausing consumption, backlog "
+                    + records + " records / " + bytes + " bytes exceeds high watermark");
+        } else if (backpressured && records <= lowWatermarkRecords && bytes <= lowWatermarkBytes) {
+            backpressured = false;
+            // 流水线模式下仍在处理中的Partition保持暂停
+            List<TopicPartition> resumable = new ArrayList<>(consumer.assignment());
+            resumable.removeAll(inFlight.keySet());
+            consumer.resume(resumable);
+            LoggerFactory.getLogger(ConsumerRunner.class).info("Resuming consumption, backlog "
+                    + records + " records / " + bytes + " bytes below low watermark");
+        }
+        // Rebalance后新分配的Partition默认不是暂停状态,因此背压期间每次都重新暂停整个分配
+        if (backpressured) consumer.pause(consumer.assignment());
+    }
+
+    public boolean isBackpressured() {
+        return backpressured;
+    }
+
+    public long getBacklogRecords() {
+        return backlogRecords.get();
+    }
+
+    public long getBacklogBytes() {
+        return backlogBytes.get();
+    }
+
+    public ConsumerRunnerMetrics getMetrics() {
+        return metrics;
+    }
+
+    private Map<TopicPartition, OffsetAndMetadata> drainCompleted() {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (TopicPartition partition : completed.keySet()) {
+            offsets.put(partition, completed.remove(partition));
+        }
+        return offsets;
+    }
+
+    // 调用BatchHandler,将受检异常包装为RecordProcessingException
+    private void handle(List<ConsumerRecord<K, V>> batch) {
+        try {
+            long start = System.nanoTime();
+            handler.handle(batch);
+            metrics.recordFlush(System.nanoTime() - start, batch.size());
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RecordProcessingException("BatchHandler failed to handle " + batch.size() + " records", e);
+        }
+    }
+
+    /**
+     * BatchHandler处理消息失败时抛出
+     */
+    public static class RecordProcessingException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public RecordProcessingException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    private void fail(Throwable e) {
+        failure = e;
+        state = State.FAILED;
+        LoggerFactory.getLogger(ConsumerRunner.class).error("Kafka consumer runner failed", e);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    public long getConsumedCount() {
+        return consumedCount;
+    }
+
 
     // Shutdown hook which can be called from a separate thread
     public void shutdown() {
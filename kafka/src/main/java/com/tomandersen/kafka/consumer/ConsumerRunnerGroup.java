@@ -0,0 +1,250 @@
+package com.tomandersen.kafka.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.StickyAssignor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <h3>按Partition并行消费的ConsumerRunner组.</h3>
+ * 使用同一份配置创建consumerCount个属于同一ConsumerGroup的Consumer,每个Consumer由一个
+ * {@link ConsumerRunner}包装,并在容量固定为consumerCount的线程池中运行,由Kafka将Topic的Partition
+ * 均匀分配给各个Consumer.
+ * <p>
+ * 未配置partition.assignment.strategy时使用{@link StickyAssignor},Rebalance时尽量保持原有分配,
+ * 减少Partition在Consumer之间的迁移.
+ * 所有Runner共享同一个{@link BatchHandler},因此BatchHandler需要保证线程安全.
+ * 通过{@link #shutdown()}统一关闭所有Runner(内部调用每个Runner的shutdown(),即closed标记+wakeup),
+ * 通过{@link #getStatus()}获取所有Runner的汇总状态.consumerCount超过Partition总数时多余的Consumer会处于空闲状态.
+ * <pre>
+ *     ConsumerRunnerGroup<String, String> group = new ConsumerRunnerGroup<>(props, Collections.singletonList("first"), 4, 500, 1000);
+ *     group.start();
+ *     Runtime.getRuntime().addShutdownHook(new Thread(group::shutdown));
+ * </pre>
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see ConsumerRunner
+ */
+public class ConsumerRunnerGroup<K, V> {
+    private static final Logger logger = LoggerFactory.getLogger(ConsumerRunnerGroup.class);
+
+    // Consumer配置,所有Consumer共享同一份配置
+    private final Properties props;
+    // 订阅的Topic
+    private final Collection<String> topics;
+    // Consumer个数,同时也是线程池大小
+    private final int consumerCount;
+    // 每个Runner的批次大小
+    private final int maxBatchSize;
+    // 每个Runner的最长消费周期
+    private final long maxIntervalMills;
+    // 每个Runner的流水线Worker个数,0表示不使用流水线模式
+    private final int workerThreads;
+    // 所有Runner共享的批次处理方式
+    private final BatchHandler<K, V> handler;
+    // 每个Runner的背压高水位,默认不限制
+    private long highWatermarkRecords = Long.MAX_VALUE;
+    private long highWatermarkBytes = Long.MAX_VALUE;
+
+    private final List<ConsumerRunner<K, V>> runners = new ArrayList<>();
+    private ExecutorService executor;
+
+
+    public ConsumerRunnerGroup(Properties props, Collection<String> topics, int consumerCount,
+                               int maxBatchSize, long maxIntervalMills) {
+        this(props, topics, consumerCount, BatchHandler.printing(), maxBatchSize, maxIntervalMills, 0);
+    }
+
+    public ConsumerRunnerGroup(Properties props, Collection<String> topics, int consumerCount,
+                               BatchHandler<K, V> handler, int maxBatchSize, long maxIntervalMills,
+                               int workerThreads) {
+        if (consumerCount <= 0) throw new IllegalArgumentException("consumerCount must be greater than 0");
+        if (props.getProperty(ConsumerConfig.GROUP_ID_CONFIG) == null)
+            throw new IllegalArgumentException("Missing required property: " + ConsumerConfig.GROUP_ID_CONFIG);
+        this.props = props;
+        this.topics = topics;
+        this.consumerCount = consumerCount;
+        this.maxBatchSize = maxBatchSize;
+        this.maxIntervalMills = maxIntervalMills;
+        this.workerThreads = workerThreads;
+        this.handler = handler;
+    }
+
+    /**
+     * 设置每个Runner的背压高水位,参见{@link ConsumerRunner#withBackpressure(long, long)},需要在start()之前调用
+     */
+    public ConsumerRunnerGroup<K, V> withBackpressure(long highWatermarkRecords, long highWatermarkBytes) {
+        this.highWatermarkRecords = highWatermarkRecords;
+        this.highWatermarkBytes = highWatermarkBytes;
+        return this;
+    }
+
+    /**
+     * 创建所有Consumer并提交到线程池运行,任意一个Consumer创建失败时关闭已创建的Consumer并抛出异常
+     */
+    public synchronized void start() {
+        if (executor != null) throw new IllegalStateException("ConsumerRunnerGroup already started");
+        // 1.创建并订阅所有Consumer
+        List<KafkaConsumer<K, V>> consumers = new ArrayList<>(consumerCount);
+        try {
+            for (int i = 0; i < consumerCount; i++) {
+                KafkaConsumer<K, V> consumer = new KafkaConsumer<>(withClientId(i));
+                consumers.add(consumer);
+                consumer.subscribe(topics);
+            }
+        } catch (RuntimeException e) {
+            for (KafkaConsumer<K, V> consumer : consumers) consumer.close();
+            throw e;
+        }
+
+        // 2.在固定大小的线程池中运行所有Runner
+        String groupId = props.getProperty(ConsumerConfig.GROUP_ID_CONFIG);
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(consumerCount, r -> {
+            Thread thread = new Thread(r, "consumer-runner-" + groupId + "-" + threadIndex.getAndIncrement());
+            thread.setDaemon(false);
+            return thread;
+        });
+        for (KafkaConsumer<K, V> consumer : consumers) {
+            ConsumerRunner<K, V> runner = new ConsumerRunner<>(consumer, handler, maxBatchSize, maxIntervalMills, workerThreads)
+                    .withBackpressure(highWatermarkRecords, highWatermarkBytes);
+            runners.add(runner);
+            executor.execute(runner);
+        }
+        // 不再接收新的任务,所有Runner退出后线程池自动终止
+        executor.shutdown();
+        logger.info("Started " + consumerCount + " consumer runners for group " + groupId + " on topics " + topics);
+    }
+
+    // 为每个Consumer生成不同的client.id,便于在Broker端区分,并默认使用StickyAssignor
+    private Properties withClientId(int index) {
+        Properties copy = new Properties();
+        copy.putAll(props);
+        copy.putIfAbsent(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, StickyAssignor.class.getName());
+        String clientId = props.getProperty(ConsumerConfig.CLIENT_ID_CONFIG);
+        if (clientId != null) copy.put(ConsumerConfig.CLIENT_ID_CONFIG, clientId + "-" + index);
+        return copy;
+    }
+
+    /**
+     * 通知所有Runner关闭,可以在任意线程中调用,不等待Runner退出
+     */
+    public synchronized void shutdown() {
+        for (ConsumerRunner<K, V> runner : runners) {
+            runner.shutdown();
+        }
+    }
+
+    /**
+     * 等待所有Runner退出
+     *
+     * @return 超时前所有Runner都已退出则返回true
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        ExecutorService current;
+        synchronized (this) {
+            current = executor;
+        }
+        return current == null || current.awaitTermination(timeout, unit);
+    }
+
+    public List<ConsumerRunner<K, V>> getRunners() {
+        return Collections.unmodifiableList(runners);
+    }
+
+    /**
+     * 获取所有Runner的汇总状态快照
+     */
+    public synchronized Status getStatus() {
+        int running = 0, closed = 0, failed = 0;
+        long consumed = 0;
+        List<Throwable> failures = new ArrayList<>();
+        for (ConsumerRunner<K, V> runner : runners) {
+            switch (runner.getState()) {
+                case RUNNING:
+                    running++;
+                    break;
+                case CLOSED:
+                    closed++;
+                    break;
+                case FAILED:
+                    failed++;
+                    failures.add(runner.getFailure());
+                    break;
+                default:
+                    break;
+            }
+            consumed += runner.getConsumedCount();
+        }
+        return new Status(runners.size(), running, closed, failed, consumed, failures);
+    }
+
+    /**
+     * ConsumerRunnerGroup的汇总状态
+     */
+    public static class Status {
+        private final int total;
+        private final int running;
+        private final int closed;
+        private final int failed;
+        private final long consumedCount;
+        private final List<Throwable> failures;
+
+        Status(int total, int running, int closed, int failed, long consumedCount, List<Throwable> failures) {
+            this.total = total;
+            this.running = running;
+            this.closed = closed;
+            this.failed = failed;
+            this.consumedCount = consumedCount;
+            this.failures = Collections.unmodifiableList(failures);
+        }
+
+        // 所有Runner都在运行时视为健康
+        public boolean isHealthy() {
+            return total > 0 && running == total;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getRunning() {
+            return running;
+        }
+
+        public int getClosed() {
+            return closed;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public long getConsumedCount() {
+            return consumedCount;
+        }
+
+        public List<Throwable> getFailures() {
+            return failures;
+        }
+
+        @Override
+        public String toString() {
+            return "Status{total=" + total + ", running=" + running + ", closed=" + closed
+                    + ", failed=" + failed + ", consumedCount=" + consumedCount + "}";
+        }
+    }
+}
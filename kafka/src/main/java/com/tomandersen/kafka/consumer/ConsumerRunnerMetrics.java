@@ -0,0 +1,226 @@
+package com.tomandersen.kafka.consumer;
+
+import com.tomandersen.kafka.util.Histogram;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <h3>ConsumerRunner的运行指标.</h3>
+ * 由poll线程以及流水线Worker线程直接更新,使用{@link Histogram}和{@link LongAdder}记录,开销很小.
+ * 注册到JMX后的ObjectName为"com.tomandersen.kafka:type=ConsumerRunner,name=名称",
+ * 名称默认为运行ConsumerRunner的线程名.
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see ConsumerRunner
+ */
+public class ConsumerRunnerMetrics implements ConsumerRunnerMetricsMBean {
+    private static final Logger logger = LoggerFactory.getLogger(ConsumerRunnerMetrics.class);
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final ConsumerRunner<?, ?> runner;
+    // 各项指标的直方图,延迟单位为纳秒
+    private final Histogram pollLatency = new Histogram();
+    private final Histogram recordsPerPoll = new Histogram();
+    private final Histogram flushLatency = new Histogram();
+    private final Histogram flushSize = new Histogram();
+    private final Histogram commitLatency = new Histogram();
+    private final LongAdder commitFailures = new LongAdder();
+    // 最近一次刷新的Lag
+    private volatile Map<String, Long> partitionLag = Collections.emptyMap();
+    private volatile long lagUpdatedTime = 0;
+
+    private ObjectName objectName;
+
+
+    ConsumerRunnerMetrics(ConsumerRunner<?, ?> runner) {
+        this.runner = runner;
+    }
+
+    void recordPoll(long nanos, int records) {
+        pollLatency.update(nanos);
+        recordsPerPoll.update(records);
+    }
+
+    void recordFlush(long nanos, int records) {
+        flushLatency.update(nanos);
+        flushSize.update(records);
+    }
+
+    void recordCommit(long nanos, boolean success) {
+        commitLatency.update(nanos);
+        if (!success) commitFailures.increment();
+    }
+
+    void updateLag(Map<TopicPartition, Long> lag) {
+        Map<String, Long> copy = new HashMap<>();
+        for (Map.Entry<TopicPartition, Long> entry : lag.entrySet()) {
+            copy.put(entry.getKey().toString(), entry.getValue());
+        }
+        partitionLag = Collections.unmodifiableMap(copy);
+        lagUpdatedTime = System.currentTimeMillis();
+    }
+
+    // 结束当前统计窗口
+    void rotate() {
+        pollLatency.rotate();
+        recordsPerPoll.rotate();
+        flushLatency.rotate();
+        flushSize.rotate();
+        commitLatency.rotate();
+    }
+
+    synchronized void register(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName candidate = new ObjectName("com.tomandersen.kafka:type=ConsumerRunner,name="
+                    + ObjectName.quote(name));
+            if (server.isRegistered(candidate)) server.unregisterMBean(candidate);
+            server.registerMBean(this, candidate);
+            objectName = candidate;
+        } catch (Exception e) {
+            // JMX注册失败不影响消费
+            logger.warn("Failed to register ConsumerRunner metrics " + name, e);
+        }
+    }
+
+    synchronized void unregister() {
+        if (objectName == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception e) {
+            logger.warn("Failed to unregister ConsumerRunner metrics " + objectName, e);
+        } finally {
+            objectName = null;
+        }
+    }
+
+    @Override
+    public String getState() {
+        return runner.getState().name();
+    }
+
+    @Override
+    public long getConsumedCount() {
+        return runner.getConsumedCount();
+    }
+
+    @Override
+    public long getPollCount() {
+        return pollLatency.getTotalCount();
+    }
+
+    @Override
+    public double getPollLatencyAvgMs() {
+        return pollLatency.getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getPollLatencyP99Ms() {
+        return pollLatency.getQuantile(0.99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getRecordsPerPollAvg() {
+        return recordsPerPoll.getMean();
+    }
+
+    @Override
+    public long getRecordsPerPollP99() {
+        return recordsPerPoll.getQuantile(0.99);
+    }
+
+    @Override
+    public long getFlushCount() {
+        return flushLatency.getTotalCount();
+    }
+
+    @Override
+    public double getFlushLatencyAvgMs() {
+        return flushLatency.getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getFlushLatencyP99Ms() {
+        return flushLatency.getQuantile(0.99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getFlushLatencyMaxMs() {
+        return flushLatency.getMax() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getFlushSizeAvg() {
+        return flushSize.getMean();
+    }
+
+    @Override
+    public long getCommitCount() {
+        return commitLatency.getTotalCount();
+    }
+
+    @Override
+    public long getCommitFailureCount() {
+        return commitFailures.sum();
+    }
+
+    @Override
+    public double getCommitLatencyAvgMs() {
+        return commitLatency.getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getCommitLatencyP99Ms() {
+        return commitLatency.getQuantile(0.99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long getBacklogRecords() {
+        return runner.getBacklogRecords();
+    }
+
+    @Override
+    public long getBacklogBytes() {
+        return runner.getBacklogBytes();
+    }
+
+    @Override
+    public boolean isBackpressured() {
+        return runner.isBackpressured();
+    }
+
+    @Override
+    public long getTotalLag() {
+        long total = 0;
+        for (long lag : partitionLag.values()) total += lag;
+        return total;
+    }
+
+    @Override
+    public long getMaxPartitionLag() {
+        long max = 0;
+        for (long lag : partitionLag.values()) max = Math.max(max, lag);
+        return max;
+    }
+
+    @Override
+    public Map<String, Long> getPartitionLag() {
+        return partitionLag;
+    }
+
+    @Override
+    public long getLagUpdatedTime() {
+        return lagUpdatedTime;
+    }
+}
@@ -0,0 +1,66 @@
+package com.tomandersen.kafka.consumer;
+
+import java.util.Map;
+
+/**
+ * <h3>ConsumerRunner通过JMX暴露的指标.</h3>
+ * 延迟和批次大小为最近一个统计窗口内的值,计数为启动以来的累计值,Lag按固定周期刷新.
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see ConsumerRunnerMetrics
+ */
+public interface ConsumerRunnerMetricsMBean {
+
+    String getState();
+
+    long getConsumedCount();
+
+    // poll()耗时以及每次poll返回的消息条数
+    long getPollCount();
+
+    double getPollLatencyAvgMs();
+
+    double getPollLatencyP99Ms();
+
+    double getRecordsPerPollAvg();
+
+    long getRecordsPerPollP99();
+
+    // BatchHandler处理耗时以及批次大小
+    long getFlushCount();
+
+    double getFlushLatencyAvgMs();
+
+    double getFlushLatencyP99Ms();
+
+    double getFlushLatencyMaxMs();
+
+    double getFlushSizeAvg();
+
+    // Offset提交耗时
+    long getCommitCount();
+
+    long getCommitFailureCount();
+
+    double getCommitLatencyAvgMs();
+
+    double getCommitLatencyP99Ms();
+
+    // 背压
+    long getBacklogRecords();
+
+    long getBacklogBytes();
+
+    boolean isBackpressured();
+
+    // Lag
+    long getTotalLag();
+
+    long getMaxPartitionLag();
+
+    Map<String, Long> getPartitionLag();
+
+    long getLagUpdatedTime();
+}
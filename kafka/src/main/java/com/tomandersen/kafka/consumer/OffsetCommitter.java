@@ -0,0 +1,120 @@
+package com.tomandersen.kafka.consumer;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.RetriableException;
+import org.apache.kafka.common.errors.WakeupException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * <h3>按Partition精确提交Offset,并合并提交请求.</h3>
+ * 待提交的Offset按Partition合并(只保留最大值),同一时刻最多只有一个commitAsync请求在途,
+ * 在途请求完成后再将期间累积的Offset合并为一个请求发送,从而减少提交请求数量.
+ * 可重试的提交失败会将Offset放回待提交集合,其他失败(例如Rebalance导致的CommitFailedException)只记录日志.
+ * <p>
+ * 只能在Consumer所在的poll线程中使用,commitAsync的回调同样在poll线程中执行,因此内部无需同步.
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see ConsumerRunner
+ */
+class OffsetCommitter {
+    private static final Logger logger = LoggerFactory.getLogger(OffsetCommitter.class);
+
+    private final Consumer<?, ?> consumer;
+    private final ConsumerRunnerMetrics metrics;
+    // 待提交的Offset
+    private final Map<TopicPartition, OffsetAndMetadata> pending = new HashMap<>();
+    // 在途的commitAsync请求对应的Offset,为null表示没有在途请求
+    private Map<TopicPartition, OffsetAndMetadata> inFlight;
+
+
+    OffsetCommitter(Consumer<?, ?> consumer, ConsumerRunnerMetrics metrics) {
+        this.consumer = consumer;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 添加一批已处理完成的消息,每个Partition提交其最后一条消息的下一个Offset
+     */
+    void add(List<? extends ConsumerRecord<?, ?>> records) {
+        for (ConsumerRecord<?, ?> record : records) {
+            add(new TopicPartition(record.topic(), record.partition()), record.offset() + 1);
+        }
+    }
+
+    void add(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        for (Map.Entry<TopicPartition, OffsetAndMetadata> entry : offsets.entrySet()) {
+            merge(pending, entry.getKey(), entry.getValue());
+        }
+    }
+
+    void add(TopicPartition partition, long nextOffset) {
+        merge(pending, partition, new OffsetAndMetadata(nextOffset));
+    }
+
+    private static void merge(Map<TopicPartition, OffsetAndMetadata> target,
+                              TopicPartition partition, OffsetAndMetadata offset) {
+        OffsetAndMetadata current = target.get(partition);
+        if (current == null || current.offset() < offset.offset()) target.put(partition, offset);
+    }
+
+    /**
+     * 没有在途请求且存在待提交的Offset时发起一次commitAsync
+     */
+    void maybeCommitAsync() {
+        if (inFlight != null || pending.isEmpty()) return;
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>(pending);
+        pending.clear();
+        inFlight = offsets;
+        long start = System.nanoTime();
+        consumer.commitAsync(offsets, (committed, e) -> {
+            // 回调在poll线程中执行
+            metrics.recordCommit(System.nanoTime() - start, e == null);
+            if (inFlight == offsets) inFlight = null;
+            if (e == null) return;
+            if (e instanceof RetriableException) {
+                // 可重试的失败放回待提交集合,与期间新增的Offset合并后重新提交
+                for (Map.Entry<TopicPartition, OffsetAndMetadata> entry : offsets.entrySet()) {
+                    merge(pending, entry.getKey(), entry.getValue());
+                }
+                logger.warn("Retriable failure committing offsets " + offsets + ", will retry", e);
+            } else {
+                logger.warn("Failed to commit offsets " + offsets, e);
+            }
+        });
+    }
+
+    /**
+     * 同步提交所有待提交和在途的Offset,用于关闭Consumer之前
+     */
+    void commitSync() {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        if (inFlight != null) offsets.putAll(inFlight);
+        for (Map.Entry<TopicPartition, OffsetAndMetadata> entry : pending.entrySet()) {
+            merge(offsets, entry.getKey(), entry.getValue());
+        }
+        pending.clear();
+        inFlight = null;
+        if (offsets.isEmpty()) return;
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            try {
+                consumer.commitSync(offsets);
+            } catch (WakeupException e) {
+                // shutdown()设置的wakeup标记可能尚未被poll消费,抛出一次后标记即被清除,重试即可
+                consumer.commitSync(offsets);
+            }
+            success = true;
+        } finally {
+            metrics.recordCommit(System.nanoTime() - start, success);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.tomandersen.kafka.consumer;
+
+import com.tomandersen.kafka.util.OffsetRange;
+import com.tomandersen.kafka.util.OffsetRangeReader;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <h3>按时间窗口并行重放Topic中的消息.</h3>
+ * 例如"重放09:00到09:30之间的所有消息":先通过offsetsForTimes为每个Partition解析出时间窗口对应的
+ * Offset区间[startOffset, endOffset),再按Partition并行读取(每个Partition一个{@link OffsetRangeReader}),
+ * 按批次交给{@link BatchHandler}处理.吞吐量随Partition数和并行度线性增长.
+ * <p>
+ * 每个读取任务最多同时持有一个批次以及一次poll的数据,因此在途内存约为
+ * parallelism * (batchSize + max.poll.records)条消息.max.poll.records未配置时默认等于batchSize.
+ * <p>
+ * 区间按Offset确定:startOffset为时间戳不小于startTime的第一条消息,endOffset为时间戳不小于endTime的第一条消息,
+ * 使用CreateTime且时间戳乱序时,区间内可能包含少量窗口外的消息.
+ * 同一Partition的消息按Offset顺序依次交给BatchHandler,不同Partition并发调用,BatchHandler需要线程安全.
+ * 任一批次处理失败时停止所有读取任务并抛出异常.
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see OffsetRangeReader
+ */
+public class TimeRangeReplayer<K, V> {
+    private final Properties props;
+    private final BatchHandler<K, V> sink;
+    private final int parallelism;
+    private final int batchSize;
+
+
+    /**
+     * @param props       KafkaConsumer配置,至少包含bootstrap.servers和反序列化器,不需要group.id
+     * @param sink        处理重放消息的BatchHandler
+     * @param parallelism 同时读取的Partition数
+     * @param batchSize   每个批次的最大消息数
+     */
+    public TimeRangeReplayer(Properties props, BatchHandler<K, V> sink, int parallelism, int batchSize) {
+        if (parallelism <= 0 || batchSize <= 0)
+            throw new IllegalArgumentException("parallelism and batchSize must be positive");
+        this.props = new Properties();
+        this.props.putAll(props);
+        this.props.putIfAbsent(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(batchSize));
+        this.sink = sink;
+        this.parallelism = parallelism;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 解析时间窗口[startTime, endTime)在指定Topic各Partition上对应的Offset区间,忽略空区间
+     *
+     * @param topics    指定的Topic
+     * @param startTime 起始时间戳(包含),单位毫秒
+     * @param endTime   结束时间戳(不包含),单位毫秒
+     */
+    public List<OffsetRange> resolve(Collection<String> topics, long startTime, long endTime) {
+        if (startTime > endTime)
+            throw new IllegalArgumentException("startTime " + startTime + " is after endTime " + endTime);
+        try (KafkaConsumer<K, V> consumer = new KafkaConsumer<>(props)) {
+            // 1.获取所有Partition
+            List<TopicPartition> partitions = new ArrayList<>();
+            for (String topic : topics) {
+                List<PartitionInfo> infos = consumer.partitionsFor(topic);
+                if (infos == null) continue;
+                for (PartitionInfo info : infos) partitions.add(new TopicPartition(info.topic(), info.partition()));
+            }
+            if (partitions.isEmpty()) return Collections.emptyList();
+            // 2.批量查询两个时间点对应的Offset,没有更新的消息时使用endOffset
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+            Map<TopicPartition, OffsetAndTimestamp> starts = consumer.offsetsForTimes(timestamps(partitions, startTime));
+            Map<TopicPartition, OffsetAndTimestamp> ends = consumer.offsetsForTimes(timestamps(partitions, endTime));
+            List<OffsetRange> ranges = new ArrayList<>();
+            for (TopicPartition partition : partitions) {
+                long endOffset = endOffsets.get(partition);
+                OffsetAndTimestamp start = starts.get(partition);
+                OffsetAndTimestamp end = ends.get(partition);
+                OffsetRange range = new OffsetRange(partition, start == null ? endOffset : start.offset(),
+                        end == null ? endOffset : end.offset());
+                if (!range.isEmpty()) ranges.add(range);
+            }
+            return ranges;
+        }
+    }
+
+    private static Map<TopicPartition, Long> timestamps(List<TopicPartition> partitions, long timestamp) {
+        Map<TopicPartition, Long> timestamps = new HashMap<>(partitions.size() * 2);
+        for (TopicPartition partition : partitions) timestamps.put(partition, timestamp);
+        return timestamps;
+    }
+
+    /**
+     * 重放时间窗口[startTime, endTime)内的消息,阻塞直到全部处理完成
+     *
+     * @return 各Partition重放的消息数
+     * @throws ConsumerRunner.RecordProcessingException 读取或处理失败
+     * @throws InterruptedException                     等待期间被中断,所有读取任务随之停止
+     */
+    public Result replay(Collection<String> topics, long startTime, long endTime) throws InterruptedException {
+        return replay(resolve(topics, startTime, endTime));
+    }
+
+    /**
+     * 按Partition并行重放指定的Offset区间
+     */
+    public Result replay(List<OffsetRange> ranges) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        Map<TopicPartition, Long> counts = new ConcurrentHashMap<>();
+        if (ranges.isEmpty()) return new Result(counts, 0);
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, ranges.size()), r -> {
+            Thread thread = new Thread(r, "time-range-replay-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+        try {
+            for (OffsetRange range : ranges) {
+                completion.submit(() -> {
+                    try {
+                        counts.put(range.partition(), replay(range));
+                    } catch (RuntimeException | InterruptedException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        throw new ConsumerRunner.RecordProcessingException("Failed to replay " + range, e);
+                    }
+                    return null;
+                });
+            }
+            // 任一任务失败时立即停止其他任务
+            for (int i = 0; i < ranges.size(); i++) {
+                try {
+                    completion.take().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                    throw new ConsumerRunner.RecordProcessingException("Failed to replay " + ranges, cause);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        return new Result(counts, System.currentTimeMillis() - start);
+    }
+
+    // 读取单个Partition的区间,按批次交给sink处理
+    private long replay(OffsetRange range) throws Exception {
+        long count = 0;
+        List<ConsumerRecord<K, V>> batch = new ArrayList<>(batchSize);
+        List<ConsumerRecord<K, V>> view = Collections.unmodifiableList(batch);
+        try (OffsetRangeReader<K, V> reader = new OffsetRangeReader<>(props, Collections.singletonList(range))) {
+            while (reader.hasNext()) {
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+                batch.add(reader.next());
+                if (batch.size() >= batchSize) {
+                    sink.handle(view);
+                    count += batch.size();
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                sink.handle(view);
+                count += batch.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 一次重放的结果
+     */
+    public static class Result {
+        private final Map<TopicPartition, Long> counts;
+        private final long elapsedMills;
+
+        Result(Map<TopicPartition, Long> counts, long elapsedMills) {
+            this.counts = Collections.unmodifiableMap(counts);
+            this.elapsedMills = elapsedMills;
+        }
+
+        // 各Partition重放的消息数
+        public Map<TopicPartition, Long> getCounts() {
+            return counts;
+        }
+
+        public long getTotalCount() {
+            long total = 0;
+            for (long count : counts.values()) total += count;
+            return total;
+        }
+
+        public long getElapsedMills() {
+            return elapsedMills;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{totalCount=" + getTotalCount() + ", elapsedMills=" + elapsedMills + ", counts=" + counts + '}';
+        }
+    }
+}
@@ -58,7 +58,7 @@ public class KafkaConsumerRunnerDemo {
             kafkaConsumer.assign(Arrays.asList(topicPartition1, topicPartition2));*/
 
         // 创建消费者启动器ConsumerRunner,每批次最多消费10个消息,每次消费最长周期为10000ms
-        ConsumerRunner consumerRunner = new ConsumerRunner(kafkaConsumer, 10, 10000);
+        ConsumerRunner<String, String> consumerRunner = new ConsumerRunner<>(kafkaConsumer, 10, 10000);
         // 启动消费者线程consumerRunner
         new Thread(consumerRunner).start();
     }
@@ -1,5 +1,6 @@
 package com.tomandersen.kafka.demo;
 
+import com.tomandersen.kafka.interceptor.CountInterceptor;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
@@ -59,8 +60,9 @@ public class ProducerInterceptorDemo {
                 // 封装ProducerRecord并设置回调类CallBack,实现其onCompletion方法,这是消息发送结束的回调方法
                 // 创建ProducerRecord时需要注意,Producer默认是使用Hash的方式选择Partition
                 // 即默认情况下Key值相同的消息会被分配到同一个Partition中
+                // 通过CountInterceptor.timed包装Callback,CountInterceptor即可统计该消息的确认延迟
                 kafkaProducer.send(new ProducerRecord<>("first",
-                        Integer.toString(i + 1), Integer.toString(i)), (metadata, exception) -> {
+                        Integer.toString(i + 1), Integer.toString(i)), CountInterceptor.timed((metadata, exception) -> {
                     // 如果Exception为空,则表示发送成功
                     if (exception == null) {
                         // 输出对应的Topic/Partition/Offset信息
@@ -70,7 +72,7 @@ public class ProducerInterceptorDemo {
                         // 如果Exception为非空,则表示发送失败
                         System.out.println("发送失败");
                     }
-                });
+                }));
             }
         } catch (Exception e) {
             e.printStackTrace();
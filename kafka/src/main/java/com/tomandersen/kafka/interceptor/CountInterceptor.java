@@ -1,23 +1,45 @@
 package com.tomandersen.kafka.interceptor;
 
 import org.apache.kafka.clients.producer.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <h3>Producer Interceptor实现练习</h3>
- * 主要用于练习Producer Interceptor的实现.此Producer Interceptor的作用是统计
- * 发送成功和发送失败的消息数量.
+ * 主要用于练习Producer Interceptor的实现.此Producer Interceptor的作用是按Topic及Partition统计
+ * 发送成功和发送失败的消息数量,以及从发送到确认的延迟,运行期间通过JMX实时暴露,见{@link CountInterceptorMetrics}.
+ * <p>
+ * Interceptor不修改消息.onAcknowledgement只能拿到RecordMetadata,无法对应到发送时的消息,
+ * 因此确认延迟只统计通过{@link #timed(Callback)}包装Callback发送的消息:包装时以System.nanoTime()记录发送时间,
+ * Producer的I/O线程在同一条消息的onAcknowledgement之后立即调用该Callback,由其计算延迟并计入本Interceptor的指标.
+ * 延迟与消息的时间戳无关,不受调用方指定的时间戳或Topic的LogAppendTime影响.
+ * 未包装Callback的消息(例如Flume KafkaSink等无法修改发送代码的Producer)只计数,
+ * 此时JMX中的TimedSampleCount为0,延迟直方图为空.
+ * <pre>
+ * producer.send(record, CountInterceptor.timed((metadata, exception) -&gt; { ... }));
+ * </pre>
+ * 计数和延迟统计的代价为每条消息约一百纳秒,确认时不分配对象,可以在生产环境常驻.
  *
  * @author TomAndersen
  * @version 1.0
  * @date 2020/3/19
  */
-public class CountInterceptor implements ProducerInterceptor<String, String> {
+public class CountInterceptor<K, V> implements ProducerInterceptor<K, V> {
+    private static final Logger logger = LoggerFactory.getLogger(CountInterceptor.class);
 
-    // 定义实例成员变量用于记录成功发送和发送失败消息个数
-    private int succeedCount = 0;
-    private int faildCount = 0;
+    // 确认延迟的统计窗口,单位为毫秒,默认60000
+    public static final String METRICS_WINDOW_CONFIG = "count.interceptor.metrics.window.ms";
+    private static final long DEFAULT_METRICS_WINDOW_MILLS = 60000;
+    private static final AtomicInteger INSTANCE_SEQUENCE = new AtomicInteger();
+    // I/O线程最近一次确认所属的指标,供随后调用的TimedCallback使用
+    private static final ThreadLocal<Acknowledged> ACKNOWLEDGED = ThreadLocal.withInitial(Acknowledged::new);
+
+    // 定义实例成员变量用于记录成功发送和发送失败消息个数,configure()之前使用默认配置
+    private CountInterceptorMetrics metrics = new CountInterceptorMetrics(
+            "count-interceptor-" + INSTANCE_SEQUENCE.incrementAndGet(), DEFAULT_METRICS_WINDOW_MILLS);
 
 
     /**
@@ -50,8 +72,8 @@ public class CountInterceptor implements ProducerInterceptor<String, String> {
      * @return producer record to send to topic/partition
      */
     @Override
-    public ProducerRecord<String, String> onSend(ProducerRecord<String, String> record) {
-        // 由于不对Record进行处理,所以此处直接返回传入对象
+    public ProducerRecord<K, V> onSend(ProducerRecord<K, V> record) {
+        metrics.recordSend();
         return record;
     }
 
@@ -77,9 +99,14 @@ public class CountInterceptor implements ProducerInterceptor<String, String> {
      */
     @Override
     public void onAcknowledgement(RecordMetadata metadata, Exception exception) {
-        // 通过判断Exception是否为null来定义消息是否成功发送
-        if (exception == null) succeedCount++;
-        else faildCount++;
+        if (metadata == null) return;
+        // 通过判断Exception是否为null来定义消息是否成功发送,发送失败时只计数不统计延迟
+        metrics.recordAck(metadata.topic(), metadata.partition(), exception == null, System.currentTimeMillis());
+        if (exception == null) {
+            Acknowledged acknowledged = ACKNOWLEDGED.get();
+            acknowledged.metrics = metrics;
+            acknowledged.topic = metadata.topic();
+        }
     }
 
     /**
@@ -87,18 +114,78 @@ public class CountInterceptor implements ProducerInterceptor<String, String> {
      */
     @Override
     public void close() {
-        // 在拦截器对象关闭时输出成功发送和发送失败的消息个数
-        System.out.println("Successful sent: " + succeedCount);
-        System.out.println("Failed sent: " + faildCount);
+        // 在拦截器对象关闭时记录成功发送和发送失败的消息个数,并注销JMX
+        logger.info("CountInterceptor {} closed, succeeded: {}, failed: {}, timed: {}", metrics.getClientId(),
+                metrics.getSucceededCount(), metrics.getFailedCount(), metrics.getTimedSampleCount());
+        metrics.unregister();
+    }
+
+    public CountInterceptorMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 包装发送消息时的Callback,以统计该消息从send()到确认的延迟.
+     * 没有配置CountInterceptor的Producer使用时只调用原Callback.
+     *
+     * @param callback 原Callback,可以为null
+     */
+    public static Callback timed(Callback callback) {
+        return new TimedCallback(callback, System.nanoTime());
     }
 
     /**
      * Configure this class with the given key-value pairs
      *
+     * 以client.id作为JMX名称注册指标,KafkaProducer保证传入的配置中包含client.id
+     *
      * @param configs Producer配置信息
      */
     @Override
     public void configure(Map<String, ?> configs) {
+        Object clientId = configs.get(ProducerConfig.CLIENT_ID_CONFIG);
+        long windowMills = getLong(configs, METRICS_WINDOW_CONFIG, DEFAULT_METRICS_WINDOW_MILLS);
+        metrics = new CountInterceptorMetrics(clientId == null || clientId.toString().isEmpty()
+                ? metrics.getClientId() : clientId.toString(), windowMills);
+        metrics.register();
+    }
+
+    private static long getLong(Map<String, ?> configs, String key, long defaultValue) {
+        Object value = configs.get(key);
+        if (value == null) return defaultValue;
+        return value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString().trim());
+    }
+
+    /**
+     * I/O线程中最近一次成功确认的消息所属的指标,每个线程复用同一个实例
+     */
+    private static final class Acknowledged {
+        private CountInterceptorMetrics metrics;
+        private String topic;
+    }
+
+    /**
+     * 记录发送时间的Callback.KafkaProducer在同一线程中先调用Interceptor的onAcknowledgement再调用Callback,
+     * 因此此时ACKNOWLEDGED中即为本条消息的确认;发送失败时不统计延迟
+     */
+    private static final class TimedCallback implements Callback {
+        private final Callback callback;
+        private final long sendNanos;
+
+        TimedCallback(Callback callback, long sendNanos) {
+            this.callback = callback;
+            this.sendNanos = sendNanos;
+        }
 
+        @Override
+        public void onCompletion(RecordMetadata metadata, Exception exception) {
+            Acknowledged acknowledged = ACKNOWLEDGED.get();
+            CountInterceptorMetrics metrics = acknowledged.metrics;
+            acknowledged.metrics = null;
+            if (exception == null && metrics != null && metadata != null && metadata.topic().equals(acknowledged.topic)) {
+                metrics.recordLatency(metadata.topic(), (System.nanoTime() - sendNanos) / 1000000);
+            }
+            if (callback != null) callback.onCompletion(metadata, exception);
+        }
     }
 }
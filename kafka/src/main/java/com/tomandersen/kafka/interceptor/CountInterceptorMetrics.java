@@ -0,0 +1,246 @@
+package com.tomandersen.kafka.interceptor;
+
+import com.tomandersen.kafka.util.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * <h3>CountInterceptor的运行指标.</h3>
+ * 由发送线程(onSend)及Producer的I/O线程(onAcknowledgement及Callback)直接更新,计数使用{@link LongAdder},
+ * 确认延迟使用{@link Histogram},每条消息只有一次Map查找和几次无竞争的累加,不分配对象.
+ * 注册到JMX后的ObjectName为"com.tomandersen.kafka:type=ProducerInterceptor,name=client.id".
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see CountInterceptor
+ */
+public class CountInterceptorMetrics implements CountInterceptorMetricsMBean {
+    private static final Logger logger = LoggerFactory.getLogger(CountInterceptorMetrics.class);
+
+    private final String clientId;
+    private final long windowMills;
+    private final LongAdder sent = new LongAdder();
+    // 所有Topic合计的确认延迟,单位为毫秒
+    private final Histogram ackLatency = new Histogram();
+    private final ConcurrentMap<String, TopicMetrics> topics = new ConcurrentHashMap<>();
+    private volatile long nextRotate;
+
+    private ObjectName objectName;
+
+
+    CountInterceptorMetrics(String clientId, long windowMills) {
+        this.clientId = clientId;
+        this.windowMills = windowMills;
+        this.nextRotate = System.currentTimeMillis() + windowMills;
+    }
+
+    void recordSend() {
+        sent.increment();
+    }
+
+    /**
+     * 记录一次确认
+     *
+     * @param partition 未分配Partition时为负数
+     */
+    void recordAck(String topic, int partition, boolean success, long now) {
+        topic(topic).partition(partition)[success ? 0 : 1].increment();
+        if (now >= nextRotate) rotate(now);
+    }
+
+    /**
+     * 记录一条消息从send()到确认的延迟,由{@link CountInterceptor#timed}包装的Callback调用
+     */
+    void recordLatency(String topic, long latencyMills) {
+        topic(topic).ackLatency.update(latencyMills);
+        ackLatency.update(latencyMills);
+    }
+
+    // 结束当前统计窗口,通常只有I/O线程调用
+    private synchronized void rotate(long now) {
+        if (now < nextRotate) return;
+        nextRotate = now + windowMills;
+        ackLatency.rotate();
+        for (TopicMetrics metrics : topics.values()) metrics.ackLatency.rotate();
+    }
+
+    private TopicMetrics topic(String topic) {
+        TopicMetrics metrics = topics.get(topic);
+        return metrics != null ? metrics : topics.computeIfAbsent(topic, TopicMetrics::new);
+    }
+
+    synchronized void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName candidate = new ObjectName("com.tomandersen.kafka:type=ProducerInterceptor,name="
+                    + ObjectName.quote(clientId));
+            if (server.isRegistered(candidate)) server.unregisterMBean(candidate);
+            server.registerMBean(this, candidate);
+            objectName = candidate;
+        } catch (Exception e) {
+            // JMX注册失败不影响发送
+            logger.warn("Failed to register CountInterceptor metrics " + clientId, e);
+        }
+    }
+
+    synchronized void unregister() {
+        if (objectName == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception e) {
+            logger.warn("Failed to unregister CountInterceptor metrics " + objectName, e);
+        } finally {
+            objectName = null;
+        }
+    }
+
+    @Override
+    public String getClientId() {
+        return clientId;
+    }
+
+    @Override
+    public long getSentCount() {
+        return sent.sum();
+    }
+
+    @Override
+    public long getSucceededCount() {
+        return sum(0);
+    }
+
+    @Override
+    public long getFailedCount() {
+        return sum(1);
+    }
+
+    @Override
+    public long getInFlightCount() {
+        return Math.max(0, getSentCount() - getSucceededCount() - getFailedCount());
+    }
+
+    @Override
+    public Map<String, Long> getPartitionSucceededCount() {
+        return byPartition(0);
+    }
+
+    @Override
+    public Map<String, Long> getPartitionFailedCount() {
+        return byPartition(1);
+    }
+
+    @Override
+    public long getTimedSampleCount() {
+        return ackLatency.getTotalCount();
+    }
+
+    @Override
+    public long getAckLatencyWindowCount() {
+        return ackLatency.getCount();
+    }
+
+    @Override
+    public double getAckLatencyAvgMs() {
+        return ackLatency.getMean();
+    }
+
+    @Override
+    public long getAckLatencyP50Ms() {
+        return ackLatency.getQuantile(0.5);
+    }
+
+    @Override
+    public long getAckLatencyP99Ms() {
+        return ackLatency.getQuantile(0.99);
+    }
+
+    @Override
+    public long getAckLatencyMaxMs() {
+        return ackLatency.getMax();
+    }
+
+    @Override
+    public Map<String, Double> getTopicAckLatencyAvgMs() {
+        return byTopic(metrics -> metrics.ackLatency.getMean());
+    }
+
+    @Override
+    public Map<String, Long> getTopicAckLatencyP99Ms() {
+        return byTopic(metrics -> metrics.ackLatency.getQuantile(0.99));
+    }
+
+    private long sum(int index) {
+        long total = 0;
+        for (TopicMetrics metrics : topics.values()) {
+            total += metrics.unassigned[index].sum();
+            for (LongAdder[] counters : metrics.partitions) total += counters[index].sum();
+        }
+        return total;
+    }
+
+    private Map<String, Long> byPartition(int index) {
+        Map<String, Long> map = new TreeMap<>();
+        for (TopicMetrics metrics : topics.values()) {
+            LongAdder[][] partitions = metrics.partitions;
+            for (int partition = 0; partition < partitions.length; partition++) {
+                long count = partitions[partition][index].sum();
+                if (count > 0) map.put(metrics.topic + "-" + partition, count);
+            }
+            long unassigned = metrics.unassigned[index].sum();
+            if (unassigned > 0) map.put(metrics.topic + "-unassigned", unassigned);
+        }
+        return map;
+    }
+
+    private <T> Map<String, T> byTopic(Function<TopicMetrics, T> value) {
+        Map<String, T> map = new TreeMap<>();
+        for (TopicMetrics metrics : topics.values()) map.put(metrics.topic, value.apply(metrics));
+        return map;
+    }
+
+    /**
+     * 单个Topic的计数及确认延迟,每个Partition一组[成功,失败]计数,按Partition下标保存
+     */
+    private static final class TopicMetrics {
+        private final String topic;
+        private final Histogram ackLatency = new Histogram();
+        private final LongAdder[] unassigned = newCounters();
+        private volatile LongAdder[][] partitions = new LongAdder[0][];
+
+        TopicMetrics(String topic) {
+            this.topic = topic;
+        }
+
+        LongAdder[] partition(int partition) {
+            if (partition < 0) return unassigned;
+            LongAdder[][] array = partitions;
+            return partition < array.length ? array[partition] : grow(partition + 1)[partition];
+        }
+
+        // Partition数增加时扩容,保留已有的计数
+        private synchronized LongAdder[][] grow(int size) {
+            LongAdder[][] array = partitions;
+            if (array.length >= size) return array;
+            LongAdder[][] grown = new LongAdder[size][];
+            System.arraycopy(array, 0, grown, 0, array.length);
+            for (int i = array.length; i < size; i++) grown[i] = newCounters();
+            partitions = grown;
+            return grown;
+        }
+
+        private static LongAdder[] newCounters() {
+            return new LongAdder[]{new LongAdder(), new LongAdder()};
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.tomandersen.kafka.interceptor;
+
+import java.util.Map;
+
+/**
+ * <h3>CountInterceptor通过JMX暴露的指标.</h3>
+ * 计数为启动以来的累计值,Partition的键格式为"topic-partition",发送失败且尚未分配Partition的消息
+ * 计入"topic-unassigned".确认延迟为最近一个统计窗口内的值,按Topic统计,单位为毫秒,
+ * 只包含通过{@link CountInterceptor#timed}包装Callback发送的消息.窗口内没有样本时延迟为0,
+ * 需结合TimedSampleCount及AckLatencyWindowCount判断延迟是否有效:只配置interceptor.classes
+ * 而没有包装Callback的Producer(例如Flume的KafkaSink)只有计数,TimedSampleCount始终为0.
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see CountInterceptorMetrics
+ */
+public interface CountInterceptorMetricsMBean {
+
+    String getClientId();
+
+    // 发送及确认计数
+    long getSentCount();
+
+    long getSucceededCount();
+
+    long getFailedCount();
+
+    long getInFlightCount();
+
+    Map<String, Long> getPartitionSucceededCount();
+
+    Map<String, Long> getPartitionFailedCount();
+
+    // 启动以来统计了延迟的消息数,即通过CountInterceptor.timed发送并成功确认的消息数
+    long getTimedSampleCount();
+
+    // 最近一个统计窗口内的延迟样本数,为0时以下延迟均无意义
+    long getAckLatencyWindowCount();
+
+    // 从send()到确认的延迟
+    double getAckLatencyAvgMs();
+
+    long getAckLatencyP50Ms();
+
+    long getAckLatencyP99Ms();
+
+    long getAckLatencyMaxMs();
+
+    Map<String, Double> getTopicAckLatencyAvgMs();
+
+    Map<String, Long> getTopicAckLatencyP99Ms();
+}
@@ -0,0 +1,62 @@
+package com.tomandersen.kafka.interceptor;
+
+import com.tomandersen.kafka.partitioner.LoadAwarePartitioner;
+import com.tomandersen.kafka.partitioner.PartitionLoadTracker;
+import org.apache.kafka.clients.producer.ProducerInterceptor;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+
+import java.util.Map;
+
+/**
+ * <h3>为{@link LoadAwarePartitioner}采集每个Partition的确认延迟.</h3>
+ * 在onSend中以System.nanoTime()记录发送时间,由Partitioner分配Partition时与该消息一起加入在途队列;
+ * 在onAcknowledgement中从队列取出对应的消息,计算从发送到确认的延迟并扣除其在途字节数.
+ * 延迟与消息的时间戳无关,因此不受调用方指定的时间戳或Topic的LogAppendTime影响,消息本身也不做任何修改.
+ * 调用方指定了Partition的消息不经过Partitioner,在onSend中直接加入队列,只统计延迟不统计字节数.
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see PartitionLoadTracker
+ */
+public class PartitionLoadInterceptor<K, V> implements ProducerInterceptor<K, V> {
+
+    private PartitionLoadTracker tracker = PartitionLoadTracker.forConfigs(null);
+
+
+    @Override
+    public ProducerRecord<K, V> onSend(ProducerRecord<K, V> record) {
+        PartitionLoadTracker.onSend();
+        if (record.partition() != null) tracker.onAssigned(record.topic(), record.partition(), 0);
+        return record;
+    }
+
+    /**
+     * 在Producer的I/O线程中调用,分配Partition之后同步失败的消息在发送线程中调用
+     *
+     * @param metadata  发送失败且尚未分配Partition时partition为{@link RecordMetadata#UNKNOWN_PARTITION}
+     * @param exception 发送失败时的异常,成功时为null
+     */
+    @Override
+    public void onAcknowledgement(RecordMetadata metadata, Exception exception) {
+        // 失败时RecordMetadata中没有序列化大小,字节数由在途队列记录
+        if (metadata == null || metadata.partition() == RecordMetadata.UNKNOWN_PARTITION) return;
+        tracker.onAcknowledged(metadata.topic(), metadata.partition(), exception != null);
+    }
+
+    @Override
+    public void close() {
+
+    }
+
+    /**
+     * 按bootstrap.servers关联与{@link LoadAwarePartitioner}共享的负载统计
+     *
+     * @param configs Producer配置信息
+     */
+    @Override
+    public void configure(Map<String, ?> configs) {
+        tracker = PartitionLoadTracker.forConfigs(configs);
+    }
+}
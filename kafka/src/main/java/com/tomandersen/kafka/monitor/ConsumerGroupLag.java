@@ -0,0 +1,145 @@
+package com.tomandersen.kafka.monitor;
+
+import com.tomandersen.kafka.util.PartitionOffsets;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.*;
+
+/**
+ * <h3>单个ConsumerGroup的Lag及Lag变化速度.</h3>
+ * 由{@link ConsumerLagMonitor}在采集线程中调用{@link #update}更新,每次更新生成一个不可变快照,
+ * JMX及Prometheus输出读取快照,无需加锁.
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see ConsumerLagMonitor
+ */
+public class ConsumerGroupLag implements ConsumerGroupLagMBean {
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final String groupId;
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyMap(), 0, 0);
+
+
+    ConsumerGroupLag(String groupId) {
+        this.groupId = groupId;
+    }
+
+    /**
+     * 根据已提交的Offset和endOffset计算Lag,并与上一次采集的结果比较得到Lag变化速度.
+     * 只在采集线程中调用.
+     */
+    void update(PartitionOffsets committed, PartitionOffsets endOffsets, long timestamp, long durationNanos) {
+        Snapshot previous = snapshot;
+        double seconds = (timestamp - previous.timestamp) / 1000.0;
+        Map<TopicPartition, PartitionLag> partitions = new TreeMap<>(
+                Comparator.comparing(TopicPartition::topic).thenComparingInt(TopicPartition::partition));
+        for (String topic : committed.topics()) {
+            long[] offsets = committed.get(topic);
+            for (int partition = 0; partition < offsets.length; partition++) {
+                long end = endOffsets.get(topic, partition);
+                if (offsets[partition] == PartitionOffsets.UNKNOWN || end == PartitionOffsets.UNKNOWN) continue;
+                TopicPartition key = new TopicPartition(topic, partition);
+                long lag = Math.max(0, end - offsets[partition]);
+                PartitionLag last = previous.partitions.get(key);
+                double rate = last == null || seconds <= 0 ? 0 : (lag - last.lag) / seconds;
+                partitions.put(key, new PartitionLag(offsets[partition], end, lag, rate));
+            }
+        }
+        snapshot = new Snapshot(partitions, timestamp, durationNanos);
+    }
+
+    Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public String getGroupId() {
+        return groupId;
+    }
+
+    @Override
+    public long getTotalLag() {
+        long total = 0;
+        for (PartitionLag lag : snapshot.partitions.values()) total += lag.lag;
+        return total;
+    }
+
+    @Override
+    public long getMaxPartitionLag() {
+        long max = 0;
+        for (PartitionLag lag : snapshot.partitions.values()) max = Math.max(max, lag.lag);
+        return max;
+    }
+
+    @Override
+    public double getTotalLagRate() {
+        double total = 0;
+        for (PartitionLag lag : snapshot.partitions.values()) total += lag.rate;
+        return total;
+    }
+
+    @Override
+    public Map<String, Long> getPartitionLag() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (Map.Entry<TopicPartition, PartitionLag> entry : snapshot.partitions.entrySet()) {
+            map.put(entry.getKey().toString(), entry.getValue().lag);
+        }
+        return map;
+    }
+
+    @Override
+    public Map<String, Double> getPartitionLagRate() {
+        Map<String, Double> map = new LinkedHashMap<>();
+        for (Map.Entry<TopicPartition, PartitionLag> entry : snapshot.partitions.entrySet()) {
+            map.put(entry.getKey().toString(), entry.getValue().rate);
+        }
+        return map;
+    }
+
+    @Override
+    public int getPartitionCount() {
+        return snapshot.partitions.size();
+    }
+
+    @Override
+    public long getLastScrapeTime() {
+        return snapshot.timestamp;
+    }
+
+    @Override
+    public double getLastScrapeDurationMs() {
+        return snapshot.durationNanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * 一次采集的结果,按Topic及Partition排序
+     */
+    static final class Snapshot {
+        final Map<TopicPartition, PartitionLag> partitions;
+        final long timestamp;
+        final long durationNanos;
+
+        Snapshot(Map<TopicPartition, PartitionLag> partitions, long timestamp, long durationNanos) {
+            this.partitions = Collections.unmodifiableMap(partitions);
+            this.timestamp = timestamp;
+            this.durationNanos = durationNanos;
+        }
+    }
+
+    static final class PartitionLag {
+        final long committed;
+        final long endOffset;
+        final long lag;
+        // 条/秒
+        final double rate;
+
+        PartitionLag(long committed, long endOffset, long lag, double rate) {
+            this.committed = committed;
+            this.endOffset = endOffset;
+            this.lag = lag;
+            this.rate = rate;
+        }
+    }
+}
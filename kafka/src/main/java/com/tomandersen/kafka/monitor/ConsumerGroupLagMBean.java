@@ -0,0 +1,35 @@
+package com.tomandersen.kafka.monitor;
+
+import java.util.Map;
+
+/**
+ * <h3>单个ConsumerGroup的Lag通过JMX暴露的指标.</h3>
+ * 所有值均为最近一次采集的结果,Partition的键格式为"topic-partition".
+ * LagRate为两次采集之间Lag的变化速度(条/秒),为负表示正在追赶.
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see ConsumerGroupLag
+ */
+public interface ConsumerGroupLagMBean {
+
+    String getGroupId();
+
+    long getTotalLag();
+
+    long getMaxPartitionLag();
+
+    double getTotalLagRate();
+
+    Map<String, Long> getPartitionLag();
+
+    Map<String, Double> getPartitionLagRate();
+
+    int getPartitionCount();
+
+    // 最近一次采集的时间及耗时
+    long getLastScrapeTime();
+
+    double getLastScrapeDurationMs();
+}
@@ -0,0 +1,234 @@
+package com.tomandersen.kafka.monitor;
+
+import com.tomandersen.kafka.util.CustomConsumes;
+import com.tomandersen.kafka.util.PartitionOffsets;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * <h3>常驻的ConsumerGroup Lag监控.</h3>
+ * 按固定周期采集指定ConsumerGroup已提交的Offset以及对应Partition的endOffset,计算每个Partition的Lag
+ * 及Lag变化速度,通过JMX(每个Group一个MBean,ObjectName为"com.tomandersen.kafka:type=ConsumerLag,group=名称")
+ * 暴露,并可选地写入Prometheus文本格式文件(供node_exporter的textfile collector读取).
+ * <p>
+ * 每次采集通过{@link CustomConsumes}共享的客户端完成:每个Group一个OffsetFetch请求且同时发出,
+ * 所有Group涉及的Partition合并为一次endOffset查询(每个Broker一个请求),连接在多次采集之间复用,
+ * 因此采集数百个Partition只需要几毫秒,代替通过kafka-consumer-groups脚本定时查询.
+ *
+ * <pre>
+ * java com.tomandersen.kafka.monitor.ConsumerLagMonitor hadoop101:9092,hadoop102:9092 group1,group2 10000 /path/kafka_lag.prom
+ * </pre>
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see ConsumerGroupLag
+ */
+public class ConsumerLagMonitor implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ConsumerLagMonitor.class);
+
+    private final Map<String, Integer> brokers;
+    private final long intervalMills;
+    // groupId -> 指标,按配置顺序
+    private final Map<String, ConsumerGroupLag> groups = new LinkedHashMap<>();
+    private final List<ObjectName> objectNames = new ArrayList<>();
+    private Path prometheusFile;
+    private ScheduledExecutorService scheduler;
+    // 只由采集线程更新
+    private volatile long scrapeFailures = 0;
+
+
+    /**
+     * @param brokers       指定的Kafka集群,格式为<"host","port">
+     * @param groupIds      要监控的ConsumerGroup
+     * @param intervalMills 采集周期
+     */
+    public ConsumerLagMonitor(Map<String, Integer> brokers, Collection<String> groupIds, long intervalMills) {
+        this.brokers = new HashMap<>(brokers);
+        this.intervalMills = intervalMills;
+        for (String groupId : groupIds) groups.put(groupId, new ConsumerGroupLag(groupId));
+    }
+
+    /**
+     * 每次采集后将结果写入指定的Prometheus文本格式文件,需要在start()之前调用
+     */
+    public ConsumerLagMonitor withPrometheusFile(Path prometheusFile) {
+        this.prometheusFile = prometheusFile;
+        return this;
+    }
+
+    /**
+     * 注册JMX并开始周期采集
+     */
+    public synchronized void start() {
+        if (scheduler != null) throw new IllegalStateException("ConsumerLagMonitor has already been started");
+        register();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "consumer-lag-monitor"));
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                scrape();
+            } catch (Exception e) {
+                // 单次采集失败不影响后续采集
+                scrapeFailures++;
+                logger.warn("Failed to scrape consumer lag", e);
+            }
+        }, 0, intervalMills, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 执行一次采集,更新所有Group的指标并写入Prometheus文件
+     */
+    public void scrape() throws IOException {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        // 1.每个Group一个请求获取已提交的Offset,所有请求同时发出
+        Map<String, PartitionOffsets> committed = CustomConsumes.getCommittedOffsets(brokers, groups.keySet());
+        Set<TopicPartition> partitions = new HashSet<>();
+        for (PartitionOffsets offsets : committed.values()) {
+            for (String topic : offsets.topics()) {
+                long[] array = offsets.get(topic);
+                for (int partition = 0; partition < array.length; partition++) {
+                    if (array[partition] != PartitionOffsets.UNKNOWN) partitions.add(new TopicPartition(topic, partition));
+                }
+            }
+        }
+        // 2.所有Group的Partition合并为一次endOffset查询
+        PartitionOffsets endOffsets = CustomConsumes.getLastOffsets(brokers, partitions);
+        long duration = System.nanoTime() - start;
+        for (Map.Entry<String, PartitionOffsets> entry : committed.entrySet()) {
+            groups.get(entry.getKey()).update(entry.getValue(), endOffsets, now, duration);
+        }
+        if (prometheusFile != null) writePrometheusFile();
+    }
+
+    // 先写入临时文件再原子替换,避免读取到写了一半的文件
+    private void writePrometheusFile() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        builder.append("# HELP kafka_consumergroup_lag Consumer group lag in records.\n")
+                .append("# TYPE kafka_consumergroup_lag gauge\n");
+        appendSamples(builder, "kafka_consumergroup_lag", lag -> String.valueOf(lag.lag));
+        builder.append("# HELP kafka_consumergroup_lag_rate Change of consumer group lag in records per second.\n")
+                .append("# TYPE kafka_consumergroup_lag_rate gauge\n");
+        appendSamples(builder, "kafka_consumergroup_lag_rate", lag -> String.valueOf(lag.rate));
+        builder.append("# HELP kafka_consumergroup_committed_offset Committed offset of the consumer group.\n")
+                .append("# TYPE kafka_consumergroup_committed_offset gauge\n");
+        appendSamples(builder, "kafka_consumergroup_committed_offset", lag -> String.valueOf(lag.committed));
+        builder.append("# HELP kafka_consumergroup_end_offset End offset of the partition.\n")
+                .append("# TYPE kafka_consumergroup_end_offset gauge\n");
+        appendSamples(builder, "kafka_consumergroup_end_offset", lag -> String.valueOf(lag.endOffset));
+        // createTempFile创建的文件权限为rw-------,node_exporter无法读取,因此使用固定的临时文件名,
+        // 按umask以普通权限创建.textfile collector只读取*.prom文件,会忽略此临时文件
+        Path temp = prometheusFile.resolveSibling(prometheusFile.getFileName() + ".tmp");
+        try {
+            Files.write(temp, builder.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, prometheusFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void appendSamples(StringBuilder builder, String name,
+                               Function<ConsumerGroupLag.PartitionLag, String> value) {
+        for (ConsumerGroupLag group : groups.values()) {
+            for (Map.Entry<TopicPartition, ConsumerGroupLag.PartitionLag> entry : group.getSnapshot().partitions.entrySet()) {
+                builder.append(name)
+                        .append("{group=\"").append(escape(group.getGroupId()))
+                        .append("\",topic=\"").append(escape(entry.getKey().topic()))
+                        .append("\",partition=\"").append(entry.getKey().partition())
+                        .append("\"} ").append(value.apply(entry.getValue())).append('\n');
+            }
+        }
+    }
+
+    // 转义Prometheus标签值中的反斜杠、双引号和换行
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ConsumerGroupLag group : groups.values()) {
+            try {
+                ObjectName name = new ObjectName("com.tomandersen.kafka:type=ConsumerLag,group="
+                        + ObjectName.quote(group.getGroupId()));
+                if (server.isRegistered(name)) server.unregisterMBean(name);
+                server.registerMBean(group, name);
+                objectNames.add(name);
+            } catch (Exception e) {
+                // JMX注册失败不影响采集
+                logger.warn("Failed to register consumer lag metrics of group " + group.getGroupId(), e);
+            }
+        }
+    }
+
+    public ConsumerGroupLag getGroupLag(String groupId) {
+        return groups.get(groupId);
+    }
+
+    public long getScrapeFailures() {
+        return scrapeFailures;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            try {
+                scheduler.awaitTermination(intervalMills, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : objectNames) {
+            try {
+                server.unregisterMBean(name);
+            } catch (Exception e) {
+                logger.warn("Failed to unregister " + name, e);
+            }
+        }
+        objectNames.clear();
+    }
+
+    /**
+     * 参数依次为:Broker列表(host:port,...) ConsumerGroup列表(group,...) [采集周期(毫秒),默认10000] [Prometheus文件路径]
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: ConsumerLagMonitor <host:port,...> <group,...> [intervalMills] [prometheusFile]");
+            System.exit(1);
+        }
+        // 1.解析集群信息,端口为空时使用9092
+        Map<String, Integer> brokers = new HashMap<>();
+        for (String broker : args[0].split(",")) {
+            String[] hostPort = broker.trim().split(":");
+            brokers.put(hostPort[0], hostPort.length > 1 ? Integer.parseInt(hostPort[1]) : 9092);
+        }
+        List<String> groupIds = new ArrayList<>();
+        for (String groupId : args[1].split(",")) {
+            if (!groupId.trim().isEmpty()) groupIds.add(groupId.trim());
+        }
+        long intervalMills = args.length > 2 ? Long.parseLong(args[2]) : 10000;
+        // 2.启动监控,进程退出时关闭
+        ConsumerLagMonitor monitor = new ConsumerLagMonitor(brokers, groupIds, intervalMills);
+        if (args.length > 3) monitor.withPrometheusFile(Paths.get(args[3]));
+        Runtime.getRuntime().addShutdownHook(new Thread(monitor::close));
+        monitor.start();
+    }
+}
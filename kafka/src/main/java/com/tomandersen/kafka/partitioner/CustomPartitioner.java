@@ -1,23 +1,31 @@
 package com.tomandersen.kafka.partitioner;
 
 import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.clients.producer.internals.DefaultPartitioner;
 import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.utils.Utils;
 
 import java.util.Map;
 
 /**
  * <h3>此类为自定义KafkaPartitioner的练习</h3>
  * <p>
- * 主要是通过实现
+ * 有Key的消息使用murmur2哈希选择Partition,与{@link DefaultPartitioner}的结果一致,
+ * 因此替换默认Partitioner后相同Key的消息仍然发往原来的Partition.
+ * 没有Key的消息使用粘性分配:持续发往同一个Partition直到当前批次写满或linger.ms到期,
+ * 再切换到另一个Partition,使批次尽量填满,同时整体流量仍然均匀分布到所有Partition.
  *
  * @author TomAndersen
  * @version 1.0
  * @date 2020/3/17
+ * @see StickyPartitionCache
  */
 public class CustomPartitioner implements Partitioner {
 
     // 保存配置信息
     private Map configs;
+    // 没有Key的消息使用的粘性Partition
+    private final StickyPartitionCache stickyPartitionCache = new StickyPartitionCache();
 
     /**
      * Compute the partition for the given record.
@@ -31,8 +39,11 @@ public class CustomPartitioner implements Partitioner {
      */
     @Override
     public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes, Cluster cluster) {
-        // 直接使用0号Partition,便于测试
-        return 0;
+        if (keyBytes == null) {
+            return stickyPartitionCache.partition(topic, cluster, valueBytes == null ? 0 : valueBytes.length);
+        }
+        // 与DefaultPartitioner相同:对Key的字节数组做murmur2哈希后对Partition数取模
+        return Utils.toPositive(Utils.murmur2(keyBytes)) % cluster.partitionCountForTopic(topic);
     }
 
     /**
@@ -46,7 +57,7 @@ public class CustomPartitioner implements Partitioner {
 
     /**
      * Configure this class with the given key-value pairs
-     * 获取配置信息
+     * 获取配置信息,粘性分配需要batch.size和linger.ms
      *
      * @param configs {@link Map}
      */
@@ -54,5 +65,6 @@ public class CustomPartitioner implements Partitioner {
     public void configure(Map<String, ?> configs) {
 
         this.configs = configs;
+        stickyPartitionCache.configure(configs);
     }
 }
@@ -0,0 +1,112 @@
+package com.tomandersen.kafka.partitioner;
+
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.utils.Utils;
+
+import java.util.Map;
+
+/**
+ * <h3>按设备将同一设备的消息发往同一Partition.</h3>
+ * 下游按设备做会话切分,需要同一设备的所有事件在同一Partition中,而事件日志发送时没有Key.
+ * 本类在Value的原始字节中定位设备ID(默认为公共字段cm.mid,可通过{@link #PATH_CONFIG}配置),
+ * 对其字节做murmur2哈希后对Partition数取模.哈希结果与以设备ID为Key时{@link CustomPartitioner}
+ * 及DefaultPartitioner的结果相同,因此之后改为带Key发送时设备与Partition的对应关系不变.
+ * <p>
+ * 定位只扫描从第一个'{'开始的{@link #MAX_SCAN_BYTES_CONFIG}个字节,不解析JSON也不创建String,见{@link JsonPathLocator}.
+ * 有Key的消息仍按Key哈希;找不到设备ID或格式错误的消息使用粘性分配,与{@link CustomPartitioner}相同.
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see JsonPathLocator
+ */
+public class DeviceAffinityPartitioner implements Partitioner {
+    // 设备ID在Value中的路径,以点分隔,默认cm.mid
+    public static final String PATH_CONFIG = "device.affinity.partitioner.path";
+    public static final String DEFAULT_PATH = "cm.mid";
+    // 从Value中第一个'{'开始最多扫描的字节数,默认2048
+    public static final String MAX_SCAN_BYTES_CONFIG = "device.affinity.partitioner.max.scan.bytes";
+    public static final int DEFAULT_MAX_SCAN_BYTES = 2048;
+
+    private JsonPathLocator locator = new JsonPathLocator(DEFAULT_PATH, DEFAULT_MAX_SCAN_BYTES);
+    // 没有设备ID的消息使用的粘性Partition
+    private final StickyPartitionCache stickyPartitionCache = new StickyPartitionCache();
+
+
+    @Override
+    public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes, Cluster cluster) {
+        if (keyBytes != null) {
+            return Utils.toPositive(Utils.murmur2(keyBytes)) % cluster.partitionCountForTopic(topic);
+        }
+        long range = locator.locate(valueBytes);
+        int start = JsonPathLocator.start(range);
+        int end = JsonPathLocator.end(range);
+        if (range == JsonPathLocator.NOT_FOUND || start >= end) {
+            return stickyPartitionCache.partition(topic, cluster, valueBytes == null ? 0 : valueBytes.length);
+        }
+        return Utils.toPositive(murmur2(valueBytes, start, end - start)) % cluster.partitionCountForTopic(topic);
+    }
+
+    /**
+     * 与{@link Utils#murmur2(byte[])}相同的哈希算法,只计算data中[offset, offset + length)范围内的字节,
+     * 避免为设备ID复制数组
+     */
+    @SuppressWarnings("fallthrough")
+    static int murmur2(final byte[] data, int offset, int length) {
+        final int seed = 0x9747b28c;
+        // 'm' and 'r' are mixing constants generated offline.
+        final int m = 0x5bd1e995;
+        final int r = 24;
+
+        int h = seed ^ length;
+        int length4 = length / 4;
+        for (int i = 0; i < length4; i++) {
+            final int i4 = offset + i * 4;
+            int k = (data[i4] & 0xff) + ((data[i4 + 1] & 0xff) << 8) + ((data[i4 + 2] & 0xff) << 16) + ((data[i4 + 3] & 0xff) << 24);
+            k *= m;
+            k ^= k >>> r;
+            k *= m;
+            h *= m;
+            h ^= k;
+        }
+        // Handle the last few bytes of the input array
+        int tail = offset + (length & ~3);
+        switch (length % 4) {
+            case 3:
+                h ^= (data[tail + 2] & 0xff) << 16;
+                // fall through
+            case 2:
+                h ^= (data[tail + 1] & 0xff) << 8;
+                // fall through
+            case 1:
+                h ^= data[tail] & 0xff;
+                h *= m;
+        }
+        h ^= h >>> 13;
+        h *= m;
+        h ^= h >>> 15;
+        return h;
+    }
+
+    @Override
+    public void close() {
+
+    }
+
+    /**
+     * 获取配置信息,粘性分配需要batch.size和linger.ms
+     *
+     * @param configs {@link Map}
+     */
+    @Override
+    public void configure(Map<String, ?> configs) {
+        stickyPartitionCache.configure(configs);
+        Object path = configs.get(PATH_CONFIG);
+        int maxScanBytes = (int) StickyPartitionCache.getLong(configs, MAX_SCAN_BYTES_CONFIG, DEFAULT_MAX_SCAN_BYTES);
+        if (maxScanBytes <= 0) {
+            throw new IllegalArgumentException(MAX_SCAN_BYTES_CONFIG + " must be positive: " + maxScanBytes);
+        }
+        locator = new JsonPathLocator(path == null ? DEFAULT_PATH : path.toString().trim(), maxScanBytes);
+    }
+}
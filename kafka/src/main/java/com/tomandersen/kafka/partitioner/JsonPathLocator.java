@@ -0,0 +1,159 @@
+package com.tomandersen.kafka.partitioner;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <h3>在JSON原始字节中定位指定路径的Value.</h3>
+ * 路径由点分隔的对象Key组成,如"cm.mid".从第一个'{'开始最多扫描maxScanBytes个字节,
+ * 不构建对象也不解码字符串,定位过程中不分配任何对象,结果以long返回Value在数组中的起止位置.
+ * 字符串Value的范围不包含引号且不处理转义字符,其余类型返回其原始JSON文本.
+ * <p>
+ * 消息可以带有非JSON前缀(例如Flume采集的事件日志"服务器时间|{...}"),前缀同样最多查找maxScanBytes个字节,
+ * 因此扫描的总字节数不超过maxScanBytes的两倍.
+ * 实例不可变,可被多个发送线程共享.
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see DeviceAffinityPartitioner
+ */
+final class JsonPathLocator {
+    // 路径不存在、超出扫描范围或格式错误
+    static final long NOT_FOUND = -1;
+
+    private final byte[][] segments;
+    private final int maxScanBytes;
+
+
+    JsonPathLocator(String path, int maxScanBytes) {
+        String[] keys = path.split("\\.");
+        this.segments = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i].isEmpty()) throw new IllegalArgumentException("Invalid json path: " + path);
+            segments[i] = keys[i].getBytes(StandardCharsets.UTF_8);
+        }
+        this.maxScanBytes = maxScanBytes;
+    }
+
+    static int start(long range) {
+        return (int) (range >>> 32);
+    }
+
+    static int end(long range) {
+        return (int) range;
+    }
+
+    /**
+     * 定位路径对应的Value
+     *
+     * @return 高32位为起始位置,低32位为结束位置(不包含);找不到时返回{@link #NOT_FOUND}
+     */
+    long locate(byte[] buf) {
+        if (buf == null) return NOT_FOUND;
+        // 在前maxScanBytes个字节中查找JSON的起始位置,扫描范围从此处开始计算
+        int pos = 0;
+        int prefixLimit = Math.min(buf.length, maxScanBytes);
+        while (pos < prefixLimit && buf[pos] != '{') pos++;
+        if (pos >= prefixLimit) return NOT_FOUND;
+        int limit = (int) Math.min(buf.length, (long) pos + maxScanBytes);
+        pos++;
+        int depth = 0;
+        // 每轮读取当前对象的一个成员,只会向内进入路径上的对象,不需要回退
+        while (true) {
+            pos = skipWhitespace(buf, pos, limit);
+            if (pos >= limit || buf[pos] == '}') return NOT_FOUND;
+            if (buf[pos] == ',') pos = skipWhitespace(buf, pos + 1, limit);
+            if (pos >= limit || buf[pos] != '"') return NOT_FOUND;
+            // 1.读取Key
+            int keyStart = pos + 1;
+            int keyEnd = stringEnd(buf, pos, limit) - 1;
+            if (keyEnd < keyStart) return NOT_FOUND;
+            pos = skipWhitespace(buf, keyEnd + 1, limit);
+            if (pos >= limit || buf[pos] != ':') return NOT_FOUND;
+            pos = skipWhitespace(buf, pos + 1, limit);
+            if (pos >= limit) return NOT_FOUND;
+            // 2.Key不在路径上时跳过Value
+            if (!equals(buf, keyStart, keyEnd, segments[depth])) {
+                pos = valueEnd(buf, pos, limit);
+                if (pos < 0) return NOT_FOUND;
+                continue;
+            }
+            // 3.路径的最后一段,返回Value的范围
+            if (depth == segments.length - 1) {
+                int end = valueEnd(buf, pos, limit);
+                if (end < 0) return NOT_FOUND;
+                return buf[pos] == '"' ? range(pos + 1, end - 1) : range(pos, end);
+            }
+            // 4.路径的中间一段,进入下一层对象
+            if (buf[pos] != '{') return NOT_FOUND;
+            pos++;
+            depth++;
+        }
+    }
+
+    private static long range(int start, int end) {
+        return ((long) start << 32) | end;
+    }
+
+    private static boolean equals(byte[] buf, int from, int to, byte[] key) {
+        if (to - from != key.length) return false;
+        for (int i = 0; i < key.length; i++) {
+            if (buf[from + i] != key[i]) return false;
+        }
+        return true;
+    }
+
+    // 返回pos处Value结束后的位置,超出范围或格式错误时返回-1
+    private static int valueEnd(byte[] buf, int pos, int limit) {
+        byte c = buf[pos];
+        if (c == '"') return stringEnd(buf, pos, limit);
+        if (c == '{' || c == '[') {
+            int depth = 0;
+            while (pos < limit) {
+                c = buf[pos];
+                if (c == '"') {
+                    pos = stringEnd(buf, pos, limit);
+                    if (pos < 0) return -1;
+                    continue;
+                }
+                if (c == '{' || c == '[') depth++;
+                else if ((c == '}' || c == ']') && --depth == 0) return pos + 1;
+                pos++;
+            }
+            return -1;
+        }
+        // 数字、true、false、null等字面量
+        int start = pos;
+        while (pos < limit) {
+            c = buf[pos];
+            if (c == ',' || c == '}' || c == ']' || isWhitespace(c)) break;
+            pos++;
+        }
+        // 字面量必须在扫描范围内结束,否则可能被截断
+        return pos == start || pos >= limit ? -1 : pos;
+    }
+
+    // 返回以start处引号开始的字符串结束后的位置(即结尾引号之后),未结束时返回-1
+    private static int stringEnd(byte[] buf, int start, int limit) {
+        int i = start + 1;
+        while (i < limit) {
+            byte c = buf[i];
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '"') return i + 1;
+            i++;
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(byte[] buf, int pos, int limit) {
+        while (pos < limit && isWhitespace(buf[pos])) pos++;
+        return pos;
+    }
+
+    private static boolean isWhitespace(byte c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+}
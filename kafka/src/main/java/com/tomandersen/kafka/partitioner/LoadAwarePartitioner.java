@@ -0,0 +1,139 @@
+package com.tomandersen.kafka.partitioner;
+
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.utils.Utils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <h3>避开慢Partition的Partitioner.</h3>
+ * 有Key的消息与{@link CustomPartitioner}相同使用murmur2哈希,保证相同Key发往相同Partition.
+ * 没有Key的消息使用粘性分配,但每次切换Partition时根据{@link PartitionLoadTracker}中的负载选择:
+ * 负载为确认延迟的EWMA乘以(1 + 在途字节数 / batch.size),负载超过所有可用Partition负载中位数
+ * 一定倍数(见{@link #SLOW_RATIO_CONFIG})的Partition视为慢Partition不参与选择,
+ * 其余Partition中随机取两个选择负载较低的一个(power of two choices),避免所有新批次都涌向同一个最快的Partition.
+ * <p>
+ * 为保证公平并让慢Partition恢复后能被重新发现,每次切换有一定概率(见{@link #MIN_SHARE_CONFIG})
+ * 忽略负载在所有可用Partition中随机选择,即慢Partition至少获得其平均份额的该比例.
+ * <p>
+ * 负载统计依赖{@link com.tomandersen.kafka.interceptor.PartitionLoadInterceptor},需要同时配置:
+ * <pre>
+ * props.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, LoadAwarePartitioner.class.getName());
+ * props.put(ProducerConfig.INTERCEPTOR_CLASSES_CONFIG, PartitionLoadInterceptor.class.getName());
+ * props.put(LoadAwarePartitioner.SLOW_RATIO_CONFIG, "2.0");
+ * props.put(LoadAwarePartitioner.MIN_SHARE_CONFIG, "0.1");
+ * </pre>
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see PartitionLoadTracker
+ */
+public class LoadAwarePartitioner implements Partitioner {
+    // 负载超过中位数的该倍数时视为慢Partition,默认2.0
+    public static final String SLOW_RATIO_CONFIG = "load.aware.partitioner.slow.ratio";
+    // 忽略负载随机选择的概率,取值[0,1],默认0.1
+    public static final String MIN_SHARE_CONFIG = "load.aware.partitioner.min.share";
+
+    private PartitionLoadTracker tracker = PartitionLoadTracker.forConfigs(null);
+    private double slowRatio = 2.0;
+    private double minShare = 0.1;
+    private long batchSize = 16384;
+    private final StickyPartitionCache stickyPartitionCache = new StickyPartitionCache() {
+        @Override
+        int choose(String topic, Cluster cluster, int previous) {
+            return chooseByLoad(topic, cluster, previous);
+        }
+    };
+
+
+    @Override
+    public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes, Cluster cluster) {
+        int bytes = (keyBytes == null ? 0 : keyBytes.length) + (valueBytes == null ? 0 : valueBytes.length);
+        int partition = keyBytes == null
+                ? stickyPartitionCache.partition(topic, cluster, bytes)
+                : Utils.toPositive(Utils.murmur2(keyBytes)) % cluster.partitionCountForTopic(topic);
+        tracker.onAssigned(topic, partition, bytes);
+        return partition;
+    }
+
+    /**
+     * 在非慢Partition中随机取两个选择负载较低的,有minShare的概率退化为随机选择
+     *
+     * @param previous 上一个粘性Partition,没有时为-1
+     */
+    int chooseByLoad(String topic, Cluster cluster, int previous) {
+        List<PartitionInfo> available = cluster.availablePartitionsForTopic(topic);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (available.size() <= 1 || random.nextDouble() < minShare) {
+            return stickyPartitionCache.chooseRandom(topic, cluster, previous);
+        }
+        // 1.计算所有可用Partition的负载及中位数,只在切换批次时执行
+        int size = available.size();
+        int[] partitions = new int[size];
+        double[] scores = new double[size];
+        for (int i = 0; i < size; i++) {
+            partitions[i] = available.get(i).partition();
+            scores[i] = score(topic, partitions[i]);
+        }
+        double[] sorted = scores.clone();
+        Arrays.sort(sorted);
+        double threshold = sorted[size / 2] * slowRatio;
+        // 2.剔除慢Partition及上一个Partition,中位数Partition必然不是慢Partition
+        int candidates = 0;
+        for (int i = 0; i < size; i++) {
+            if (scores[i] <= threshold && partitions[i] != previous) {
+                partitions[candidates] = partitions[i];
+                scores[candidates++] = scores[i];
+            }
+        }
+        // 只有上一个Partition不慢时继续使用它
+        if (candidates == 0) return previous;
+        if (candidates == 1) return partitions[0];
+        // 3.随机取两个不同的候选,选择负载较低的
+        int first = random.nextInt(candidates);
+        int second = random.nextInt(candidates - 1);
+        if (second >= first) second++;
+        return scores[first] <= scores[second] ? partitions[first] : partitions[second];
+    }
+
+    // 确认延迟越高、积压越多负载越高;尚无确认的Partition负载为0,会被优先探测
+    private double score(String topic, int partition) {
+        return tracker.latencyMills(topic, partition) * (1 + (double) tracker.inFlightBytes(topic, partition) / batchSize);
+    }
+
+    @Override
+    public void close() {
+
+    }
+
+    /**
+     * 获取配置信息,粘性分配需要batch.size和linger.ms,并按bootstrap.servers关联负载统计
+     *
+     * @param configs {@link Map}
+     */
+    @Override
+    public void configure(Map<String, ?> configs) {
+        stickyPartitionCache.configure(configs);
+        tracker = PartitionLoadTracker.forConfigs(configs);
+        batchSize = Math.max(1, StickyPartitionCache.getLong(configs, ProducerConfig.BATCH_SIZE_CONFIG, batchSize));
+        slowRatio = getDouble(configs, SLOW_RATIO_CONFIG, slowRatio);
+        minShare = getDouble(configs, MIN_SHARE_CONFIG, minShare);
+        if (slowRatio < 1) throw new IllegalArgumentException(SLOW_RATIO_CONFIG + " must be at least 1: " + slowRatio);
+        if (minShare < 0 || minShare > 1) {
+            throw new IllegalArgumentException(MIN_SHARE_CONFIG + " must be in [0, 1]: " + minShare);
+        }
+    }
+
+    private static double getDouble(Map<String, ?> configs, String key, double defaultValue) {
+        Object value = configs == null ? null : configs.get(key);
+        if (value == null) return defaultValue;
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString().trim());
+    }
+}
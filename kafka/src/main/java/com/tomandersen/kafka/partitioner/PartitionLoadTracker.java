@@ -0,0 +1,214 @@
+package com.tomandersen.kafka.partitioner;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <h3>记录每个Partition的在途字节数及最近的确认延迟.</h3>
+ * {@link LoadAwarePartitioner}分配消息时将该消息的发送时间和字节数按顺序加入该Partition的在途队列,
+ * {@link com.tomandersen.kafka.interceptor.PartitionLoadInterceptor}在onAcknowledgement中取出队首,
+ * 扣除其字节数并以其发送时间更新确认延迟的指数加权移动平均值(EWMA).
+ * <p>
+ * onAcknowledgement只能拿到RecordMetadata,无法得知对应的是哪条消息,而同一Partition的消息按发送顺序确认,
+ * 因此按顺序配对,发送时间为Interceptor的onSend中记录的System.nanoTime(),与消息的时间戳无关.
+ * 重试导致乱序或多个Producer共享同一Partition的队列时单条延迟会有偏差,但每次确认恰好取出一条,
+ * 在途字节数不会泄漏,延迟的均值也不受影响.
+ * 分配Partition之后在发送线程中同步失败(如消息过大、缓冲区已满)的消息,其确认中没有序列化大小,
+ * 通过发送线程记录的序号从队列中撤销.
+ * <p>
+ * Partitioner与Interceptor由KafkaProducer分别创建,二者只能通过配置关联,
+ * 因此按bootstrap.servers共享同一个实例,见{@link #forConfigs(Map)}.
+ * 同一JVM中连接同一集群的多个Producer共享统计结果,Partition的慢是Broker的属性,共享并不影响判断.
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see LoadAwarePartitioner
+ */
+public final class PartitionLoadTracker {
+    // EWMA中最新一次确认所占的权重
+    static final double ALPHA = 0.2;
+    // 发送失败时计入的延迟,单位为毫秒
+    static final double ERROR_PENALTY_MILLS = 1000;
+    // 每个Partition在途队列的最大长度,只配置Partitioner而没有Interceptor时队列不会被取出,超过后丢弃最早的消息
+    static final int MAX_IN_FLIGHT_RECORDS = 1 << 16;
+
+    private static final ConcurrentMap<String, PartitionLoadTracker> TRACKERS = new ConcurrentHashMap<>();
+    // 发送线程当前正在发送的消息
+    private static final ThreadLocal<Sending> SENDING = ThreadLocal.withInitial(Sending::new);
+
+    // Topic -> 按Partition下标保存的负载
+    private final ConcurrentMap<String, Load[]> loads = new ConcurrentHashMap<>();
+
+
+    /**
+     * 获取与配置中bootstrap.servers对应的共享实例,Partitioner和Interceptor的configure中调用
+     */
+    public static PartitionLoadTracker forConfigs(Map<String, ?> configs) {
+        Object servers = configs == null ? null : configs.get(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG);
+        String key = servers instanceof Collection
+                ? String.join(",", ((Collection<?>) servers).stream().map(String::valueOf).toArray(String[]::new))
+                : String.valueOf(servers);
+        return TRACKERS.computeIfAbsent(key, k -> new PartitionLoadTracker());
+    }
+
+    /**
+     * 在发送线程中开始发送一条消息时调用(Interceptor的onSend),记录发送时间
+     */
+    public static void onSend() {
+        Sending sending = SENDING.get();
+        sending.sendNanos = System.nanoTime();
+        sending.stamped = true;
+        sending.load = null;
+    }
+
+    /**
+     * 消息被分配到指定Partition时在发送线程中调用,没有经过onSend时以当前时间作为发送时间
+     */
+    public void onAssigned(String topic, int partition, long bytes) {
+        Sending sending = SENDING.get();
+        long sendNanos = sending.stamped ? sending.sendNanos : System.nanoTime();
+        Load load = load(topic, partition);
+        sending.sequence = load.push(sendNanos, bytes);
+        sending.load = load;
+        sending.stamped = false;
+    }
+
+    /**
+     * 消息被确认或发送失败时调用,从在途队列中取出对应的消息
+     *
+     * @param failed 是否发送失败,异步失败时按{@link #ERROR_PENALTY_MILLS}计算延迟
+     */
+    public void onAcknowledged(String topic, int partition, boolean failed) {
+        Load load = load(topic, partition);
+        Sending sending = SENDING.get();
+        if (failed && sending.load == load) {
+            // 发送线程中同步失败,撤销本线程刚分配的消息,它不会再被确认;失败与Partition的负载无关,不计入延迟
+            load.cancel(sending.sequence);
+            sending.load = null;
+            return;
+        }
+        long sendNanos = load.poll();
+        double sample;
+        if (failed) sample = Math.max(ERROR_PENALTY_MILLS, load.latencyMills);
+        else if (sendNanos >= 0) sample = (System.nanoTime() - sendNanos) / 1e6;
+        else return;
+        // 通常只有Producer的I/O线程调用,多个Producer并发更新时丢失个别样本不影响结果
+        load.latencyMills = load.latencyMills == 0 ? sample : load.latencyMills + ALPHA * (sample - load.latencyMills);
+    }
+
+    /**
+     * 当前在途字节数
+     */
+    public long inFlightBytes(String topic, int partition) {
+        return load(topic, partition).inFlightBytes;
+    }
+
+    /**
+     * 确认延迟的EWMA,单位为毫秒,尚无确认时为0
+     */
+    public double latencyMills(String topic, int partition) {
+        return load(topic, partition).latencyMills;
+    }
+
+    private Load load(String topic, int partition) {
+        Load[] array = loads.get(topic);
+        if (array == null || partition >= array.length) array = grow(topic, partition + 1);
+        return array[partition];
+    }
+
+    // Partition数增加时扩容,保留已有的统计
+    private synchronized Load[] grow(String topic, int size) {
+        Load[] array = loads.get(topic);
+        if (array != null && array.length >= size) return array;
+        Load[] grown = new Load[size];
+        int copied = array == null ? 0 : array.length;
+        if (copied > 0) System.arraycopy(array, 0, grown, 0, copied);
+        for (int i = copied; i < size; i++) grown[i] = new Load();
+        loads.put(topic, grown);
+        return grown;
+    }
+
+    /**
+     * 发送线程正在发送的消息,每个线程复用同一个实例
+     */
+    private static final class Sending {
+        private long sendNanos;
+        // onSend之后尚未分配Partition
+        private boolean stamped = false;
+        // 最近一次分配的Partition及在途队列中的序号,同步失败时用于撤销
+        private Load load;
+        private long sequence;
+    }
+
+    /**
+     * 单个Partition的负载,在途消息按分配顺序保存在环形数组中,序号从0开始递增.包内可见以便测试
+     */
+    static final class Load {
+        // 已撤销的消息
+        private static final long CANCELLED = -1;
+
+        volatile long inFlightBytes = 0;
+        private volatile double latencyMills = 0;
+        private long[] sendNanos = new long[16];
+        private long[] bytes = new long[16];
+        // 队首及队尾的序号
+        private long head = 0;
+        private long tail = 0;
+
+        synchronized long push(long nanos, long size) {
+            if (tail - head == sendNanos.length) {
+                if (sendNanos.length < MAX_IN_FLIGHT_RECORDS) resize(sendNanos.length * 2);
+                else poll();
+            }
+            int index = index(tail);
+            sendNanos[index] = nanos;
+            bytes[index] = size;
+            inFlightBytes += size;
+            return tail++;
+        }
+
+        // 取出队首的消息并返回其发送时间,队列为空时返回-1
+        synchronized long poll() {
+            while (head < tail) {
+                int index = index(head++);
+                if (bytes[index] == CANCELLED) continue;
+                inFlightBytes -= bytes[index];
+                return sendNanos[index];
+            }
+            return -1;
+        }
+
+        // 撤销指定序号的消息,已被取出(超过队列长度被丢弃)时忽略
+        synchronized void cancel(long sequence) {
+            if (sequence < head || sequence >= tail) return;
+            int index = index(sequence);
+            if (bytes[index] == CANCELLED) return;
+            inFlightBytes -= bytes[index];
+            bytes[index] = CANCELLED;
+            while (tail > head && bytes[index(tail - 1)] == CANCELLED) tail--;
+        }
+
+        private int index(long sequence) {
+            return (int) (sequence & (sendNanos.length - 1));
+        }
+
+        // 容量始终为2的幂,扩容后每条消息按序号重新放置
+        private void resize(int capacity) {
+            long[] newSendNanos = new long[capacity];
+            long[] newBytes = new long[capacity];
+            for (long sequence = head; sequence < tail; sequence++) {
+                int from = index(sequence);
+                int to = (int) (sequence & (capacity - 1));
+                newSendNanos[to] = sendNanos[from];
+                newBytes[to] = bytes[from];
+            }
+            sendNanos = newSendNanos;
+            bytes = newBytes;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.tomandersen.kafka.partitioner;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.utils.Utils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h3>为没有Key的消息提供粘性Partition.</h3>
+ * 同一Topic的消息持续发往同一个Partition,直到该Partition的当前批次写满(累计字节数达到batch.size)
+ * 或者linger.ms到期后再随机切换到另一个可用Partition,从而使每个批次尽量填满,减少请求数.
+ * 轮询分配会把消息平均摊到所有Partition上,每个批次都很小.
+ * <p>
+ * kafka-clients 2.1的Partitioner没有onNewBatch回调,因此按已分配的字节数估算批次何时完成.
+ * 多个发送线程并发调用时,通过替换不可变的Sticky对象切换Partition,无需加锁.
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see CustomPartitioner
+ */
+class StickyPartitionCache {
+    // 每条消息在批次中的估算额外开销,单位为Byte
+    static final int RECORD_OVERHEAD_BYTES = 16;
+
+    private final ConcurrentMap<String, Sticky> stickies = new ConcurrentHashMap<>();
+    private long batchSize = 16384;
+    private long lingerNanos = 0;
+
+
+    void configure(Map<String, ?> configs) {
+        batchSize = getLong(configs, ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        lingerNanos = getLong(configs, ProducerConfig.LINGER_MS_CONFIG, 0) * 1_000_000L;
+    }
+
+    static long getLong(Map<String, ?> configs, String key, long defaultValue) {
+        Object value = configs == null ? null : configs.get(key);
+        if (value == null) return defaultValue;
+        return value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString().trim());
+    }
+
+    /**
+     * 获取指定Topic当前的粘性Partition,并计入本条消息的字节数
+     *
+     * @param recordBytes 消息序列化后的大小
+     */
+    int partition(String topic, Cluster cluster, int recordBytes) {
+        Sticky sticky = stickies.get(topic);
+        if (sticky == null || sticky.isComplete()) sticky = next(topic, cluster, sticky);
+        sticky.bytes.addAndGet(recordBytes + RECORD_OVERHEAD_BYTES);
+        return sticky.partition;
+    }
+
+    // 切换到新的Partition,并发切换时只有一个线程成功,其他线程使用其结果
+    private Sticky next(String topic, Cluster cluster, Sticky previous) {
+        Sticky candidate = new Sticky(choose(topic, cluster, previous == null ? -1 : previous.partition), System.nanoTime());
+        if (previous == null) {
+            Sticky existing = stickies.putIfAbsent(topic, candidate);
+            return existing == null ? candidate : existing;
+        }
+        return stickies.replace(topic, previous, candidate) ? candidate : stickies.getOrDefault(topic, candidate);
+    }
+
+    /**
+     * 选择新的粘性Partition,优先在有Leader的Partition中随机选择一个与上一个不同的.
+     * 子类可以覆盖此方法以改变选择策略,例如{@link LoadAwarePartitioner}避开慢Partition.
+     *
+     * @param previous 上一个粘性Partition,没有时为-1
+     */
+    int choose(String topic, Cluster cluster, int previous) {
+        return chooseRandom(topic, cluster, previous);
+    }
+
+    final int chooseRandom(String topic, Cluster cluster, int previous) {
+        List<PartitionInfo> available = cluster.availablePartitionsForTopic(topic);
+        if (available.size() == 1) return available.get(0).partition();
+        if (available.isEmpty()) {
+            return Utils.toPositive(ThreadLocalRandom.current().nextInt()) % cluster.partitionCountForTopic(topic);
+        }
+        int partition;
+        do {
+            partition = available.get(ThreadLocalRandom.current().nextInt(available.size())).partition();
+        } while (partition == previous);
+        return partition;
+    }
+
+    private final class Sticky {
+        private final int partition;
+        private final long createdNanos;
+        private final AtomicLong bytes = new AtomicLong();
+
+        Sticky(int partition, long createdNanos) {
+            this.partition = partition;
+            this.createdNanos = createdNanos;
+        }
+
+        // 批次已写满或linger.ms已到期
+        boolean isComplete() {
+            return bytes.get() >= batchSize || (lingerNanos > 0 && System.nanoTime() - createdNanos >= lingerNanos);
+        }
+    }
+}
@@ -1,19 +1,18 @@
 package com.tomandersen.kafka.util;
 
 import org.apache.kafka.clients.consumer.ConsumerRecord;
-import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.common.Node;
-import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
 
-import java.time.Duration;
 import java.util.*;
+import java.util.stream.Stream;
 
 /**
  * <h3>自定义的Consume工具</h3>
  * <h>
  * 主要是通过封装KafkaConsumer中的API来实现几个自定义的功能.
+ * 元数据以及Offset查询通过按集群共享的{@link KafkaMetadataClient}完成,不再每次调用都创建新的KafkaConsumer.
  *
  * @author TomAndersen
  * @version 1.0
@@ -21,14 +20,11 @@ import java.util.*;
  * @see KafkaConsumer
  */
 public class CustomConsumes {
-    // 保存指定的TopicPartition的所有副本,用于当Leader宕机后寻找新的Leader
-    private static Node[] replications;
-
 
     /**
      * <p>
      * 用于寻找指定Brokers-Topic-Partition对应的Leader.
-     * 主要是封装了{@link KafkaConsumer#partitionsFor}方法.
+     * 通过共享的{@link KafkaMetadataClient#leaderFor}获取,结果按TTL缓存.
      *
      * @param brokers   指定的Kafka集群,格式为<"host","port">
      * @param topic     指定的Topic
@@ -37,41 +33,11 @@ public class CustomConsumes {
      * @date 2020/3/17
      */
     public static Node findLeader(Map<String, Integer> brokers, String topic, int partition) {
-        // 1.通过接收到的配置信息创建KafkaConsumer实例
-        Properties props = new Properties();
-        for (String broker : brokers.keySet()) {
-            props.put("bootstrap.servers",
-                    broker + ":" + brokers.getOrDefault(broker, 9092));
-        }
-        // 指定Consumer所属的ConsumerGroup
-        props.put("group.id", "test");
-        // 设置手动提交Offset,由于只是获取部分数据所以不需要自动提交Offset
-        props.put("enable.auto.commit", "false");
-        // 设置键值对<K,V>反序列化器,使用String对象反序列化器
-        props.put("key.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
-        props.put("value.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
-
-        // 2.定义KafkaConsumer实例,采用try{}catch{}finally{}的方式获取资源
-        KafkaConsumer<String, String> kafkaConsumer = null;
         try {
-            // 3.创建KafkaConsumer实例
-            kafkaConsumer = new KafkaConsumer<>(props);
-            // 4.通过KafkaConsumer实例获取指定Topic对应的Partition信息
-            List<PartitionInfo> partitionInfos = kafkaConsumer.partitionsFor(topic);
-            // 5.遍历返回的指定Topic的所有Partition信息
-            for (PartitionInfo partitionInfo : partitionInfos) {
-                // 若当前Partition是指定的Partition,则保存此Partition的Replication并将其Leader返回
-                if (partitionInfo.partition() == partition) {
-                    /*// 保存指定Partition的所有副本
-                    replications = partitionInfo.replicas();*/
-                    // 6.返回指定的TopicPartition对应的Leader
-                    return partitionInfo.leader();
-                }
-            }
+            // 通过共享的KafkaMetadataClient获取,元数据缓存命中时无需访问Broker
+            return KafkaMetadataClient.forBrokers(brokers).leaderFor(topic, partition);
         } catch (Exception e) {
             e.printStackTrace();
-        } finally {
-            if (kafkaConsumer != null) kafkaConsumer.close();
         }
         // 如果没有找到Leader则返回null
         return null;
@@ -96,108 +62,188 @@ public class CustomConsumes {
      * @see KafkaConsumer#endOffsets
      */
     public static long getLastOffset(Map<String, Integer> brokers, String topic, int partition) {
-        // 1.配置Consumer
-        // 通过接收到的配置信息创建KafkaConsumer实例
-        Properties props = new Properties();
-        for (String broker : brokers.keySet()) {
-            props.put("bootstrap.servers",
-                    broker + ":" + brokers.getOrDefault(broker, 9092));
-        }
-        // 指定Consumer所属的ConsumerGroup
-        props.put("group.id", "test");
-        // 设置手动提交Offset,由于只是获取部分数据所以不需要自动提交Offset
-        props.put("enable.auto.commit", "false");
-        // 设置键值对<K,V>反序列化器,直接使用String对象反序列化器
-        props.put("key.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
-        props.put("value.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
-
-        // 2.定义消费者KafkaConsumer对象
-        KafkaConsumer<String, String> kafkaConsumer = null;
-        // 3.创建TopicPartition实例
-        TopicPartition topicPartition = new TopicPartition(topic, partition);
         try {
-            // 4.创建kafkaTopic实例
-            kafkaConsumer = new KafkaConsumer<>(props);
-            // 5.通过Consumer.endOffsets(Collections<TopicPartition>)方法获取
-            // 指定TopicPartition对应的lastOffset
-            Map offsets = kafkaConsumer.endOffsets(
-                    Collections.singletonList(topicPartition));
-            // 6.返回对应Partition的Offset,如果不存在则直接返回0
-            return (Long) offsets.getOrDefault(topicPartition, 0);
+            // 通过共享的KafkaMetadataClient获取,复用其连接
+            return KafkaMetadataClient.forBrokers(brokers).endOffset(new TopicPartition(topic, partition));
         } catch (Exception e) {
             e.printStackTrace();
-        } finally {
-            if (kafkaConsumer != null) kafkaConsumer.close();
         }
         // 获取lastOffset失败则返回-1
         return -1;
     }
 
 
+    /**
+     * <p>批量获取多个Partition的endOffset,按Leader分组,每个Broker只发送一个请求.
+     * 与{@link #getLastOffset}不同,失败时直接抛出异常,避免部分结果被误认为完整结果.
+     *
+     * @param brokers    指定的Kafka集群
+     * @param partitions 指定的Partition集合,可以跨多个Topic
+     * @return 各Partition的endOffset
+     * @see KafkaMetadataClient#endOffsets
+     */
+    public static PartitionOffsets getLastOffsets(Map<String, Integer> brokers, Collection<TopicPartition> partitions) {
+        return KafkaMetadataClient.forBrokers(brokers).endOffsets(partitions);
+    }
+
+    /**
+     * <p>批量获取多个Partition的beginningOffset,按Leader分组,每个Broker只发送一个请求.
+     *
+     * @param brokers    指定的Kafka集群
+     * @param partitions 指定的Partition集合,可以跨多个Topic
+     * @return 各Partition的beginningOffset
+     * @see KafkaMetadataClient#beginningOffsets
+     */
+    public static PartitionOffsets getFirstOffsets(Map<String, Integer> brokers, Collection<TopicPartition> partitions) {
+        return KafkaMetadataClient.forBrokers(brokers).beginningOffsets(partitions);
+    }
+
+    /**
+     * <p>批量获取ConsumerGroup在多个Partition上已提交的Offset,只发送一个OffsetFetch请求.
+     *
+     * @param brokers    指定的Kafka集群
+     * @param groupId    指定的ConsumerGroup
+     * @param partitions 指定的Partition集合,为null时返回该Group提交过的所有Partition
+     * @return 各Partition已提交的Offset,未提交过的为{@link PartitionOffsets#UNKNOWN}
+     * @see KafkaMetadataClient#committedOffsets
+     */
+    public static PartitionOffsets getCommittedOffsets(Map<String, Integer> brokers, String groupId, Collection<TopicPartition> partitions) {
+        return KafkaMetadataClient.forBrokers(brokers).committedOffsets(groupId, partitions);
+    }
+
+    /**
+     * <p>批量获取多个ConsumerGroup提交过的所有Offset,所有Group的请求同时发出.
+     *
+     * @param brokers  指定的Kafka集群
+     * @param groupIds 指定的ConsumerGroup
+     * @return groupId -> 已提交的Offset
+     * @see KafkaMetadataClient#committedOffsets(Collection)
+     */
+    public static Map<String, PartitionOffsets> getCommittedOffsets(Map<String, Integer> brokers, Collection<String> groupIds) {
+        return KafkaMetadataClient.forBrokers(brokers).committedOffsets(groupIds);
+    }
+
+    /**
+     * <p>获取指定Topic的所有Partition,用于构造批量查询的参数,不存在的Topic将被忽略.
+     *
+     * @param brokers 指定的Kafka集群
+     * @param topics  指定的Topic集合
+     */
+    public static List<TopicPartition> getPartitions(Map<String, Integer> brokers, Collection<String> topics) {
+        return KafkaMetadataClient.forBrokers(brokers).partitionsOf(topics);
+    }
+
+
     /**
      * <p>主要用于从指定的Topic-Partition-Offset读取指定数量的消息.
-     * 主要是用于获取部分数据,而不是持续消费数据.主要是封装了{@link KafkaConsumer#assign}
-     * 和{@link KafkaConsumer#seek}方法.
+     * 主要是用于获取部分数据,而不是持续消费数据.基于{@link OffsetRangeReader}实现,
+     * 会持续poll直到读满maxReads条或到达Partition末尾,而不是只poll一次.
+     * 需要读取大量消息时应使用{@link #readRange}或{@link #streamRanges}逐条处理,避免全部加载到内存.
      *
      * @param brokers     指定的Kafka集群
      * @param topic       指定消费的Topic
      * @param partition   指定消费的Partition ID
      * @param beginOffset 指定开始消费的Offset
-     * @param timeInMills 指定消费的时长
+     * @param timeInMills 连续多久没有读到消息时停止读取
      * @param maxReads    指定消费的最大消息数
      * @date 2020/3/17
      */
     public static List<ConsumerRecord> getRecordsFrom(Map<String, Integer> brokers, String topic, int partition, long beginOffset, long timeInMills, long maxReads) {
-        // 1.通过接收到的配置信息创建KafkaConsumer实例
-        Properties props = new Properties();
-        for (String broker : brokers.keySet()) {
-            props.put("bootstrap.servers",
-                    broker + ":" + brokers.getOrDefault(broker, 9092));
+        List<ConsumerRecord> recordList = new ArrayList<>();
+        if (maxReads <= 0) return recordList;
+        // endOffset溢出时视为读到Partition末尾
+        long endOffset = beginOffset + maxReads < 0 ? Long.MAX_VALUE : beginOffset + maxReads;
+        OffsetRange range = OffsetRange.of(topic, partition, beginOffset, endOffset);
+        try (OffsetRangeReader<String, String> reader = new OffsetRangeReader<>(stringConsumerProps(brokers),
+                Collections.singletonList(range), Math.min(timeInMills, OffsetRangeReader.DEFAULT_POLL_TIMEOUT_MILLS),
+                timeInMills)) {
+            // Compact过的Topic区间内的消息数可能少于maxReads
+            while (recordList.size() < maxReads && reader.hasNext()) {
+                recordList.add(reader.next());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
         }
-        // 设置手动提交Offset,由于只是获取部分数据所以不需要自动提交Offset
-        props.put("enable.auto.commit", "false");
+        return recordList;
+    }
+
+    /**
+     * <p>流式读取指定Partition上[startOffset, endOffset)区间的消息,内存中只保留一次poll的数据.
+     * 返回的Reader使用完后需要关闭.
+     *
+     * @param brokers     指定的Kafka集群
+     * @param topic       指定消费的Topic
+     * @param partition   指定消费的Partition ID
+     * @param startOffset 起始Offset(包含)
+     * @param endOffset   结束Offset(不包含)
+     * @see OffsetRangeReader
+     */
+    public static OffsetRangeReader<String, String> readRange(Map<String, Integer> brokers, String topic, int partition, long startOffset, long endOffset) {
+        return new OffsetRangeReader<>(stringConsumerProps(brokers),
+                Collections.singletonList(OffsetRange.of(topic, partition, startOffset, endOffset)));
+    }
+
+    /**
+     * <p>以Stream形式读取多个Partition上的指定区间,parallel为true时按Partition并行读取.
+     * 返回的Stream使用完后需要关闭.
+     *
+     * @param brokers  指定的Kafka集群
+     * @param ranges   各Partition要读取的区间
+     * @param parallel 是否按Partition并行读取
+     * @see OffsetRangeReader#stream
+     */
+    public static Stream<ConsumerRecord<String, String>> streamRanges(Map<String, Integer> brokers, Collection<OffsetRange> ranges, boolean parallel) {
+        return OffsetRangeReader.stream(stringConsumerProps(brokers), ranges, parallel);
+    }
+
+    // 读取String类型消息的KafkaConsumer配置
+    private static Properties stringConsumerProps(Map<String, Integer> brokers) {
+        Properties props = new Properties();
+        props.put("bootstrap.servers", KafkaMetadataClient.toBootstrapServers(brokers));
         // 设置键值对<K,V>反序列化器,因为都是String类型,所以使用String对象反序列化器
         props.put("key.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
         props.put("value.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
+        return props;
+    }
 
-        // 2.定义KafkaConsumer对象,以及创建用于返回的ConsumerRecord集合
-        KafkaConsumer<Object, Object> kafkaConsumer = null;
-        List<ConsumerRecord> recordList = new ArrayList<>();
+    /**
+     * <p>在当前Leader发生故障后,寻找指定Brokers-Topic-Partition新选出的Leader.
+     * 通过共享的{@link LeaderTracker}从Broker刷新元数据,在有限的重试次数内以指数退避等待新Leader选出,
+     * 不会无限期阻塞.
+     *
+     * @param brokers   指定的Kafka集群,格式为<"host","port">
+     * @param topic     指定的Topic
+     * @param partition 指定的Partition ID
+     * @param oldLeader 发生故障的Leader,第一次刷新时不接受与其相同的Leader
+     * @return 新的Leader, 超出重试次数仍没有可用的Leader时返回null
+     * @see LeaderTracker#awaitNewLeader
+     */
+    public static Node findNewLeader(Map<String, Integer> brokers, String topic, int partition, Node oldLeader) {
         try {
-            // 3.创建KafkaConsumer实例
-            kafkaConsumer = new KafkaConsumer<>(props);
-            // 4.创建TopicPartition实例
-            TopicPartition topicPartition = new TopicPartition(topic, partition);
-            // 5.给Consumer指定消费的Topic和Partition(十分重要)
-            // 如果无对应topic或者partition,则会抛出异常IllegalArgumentException
-            // 如果此consumer之前已经有过订阅行为且未解除之前所有的订阅,则会抛出异常IllegalStateException
-            kafkaConsumer.assign(Collections.singletonList(topicPartition));
-            // 6.覆盖原始的Consumer-Topic-Partition对应的Offset,将其设置为指定Offset值
-            kafkaConsumer.seek(topicPartition, beginOffset);
-            // 7.获取消息
-            ConsumerRecords<Object, Object> consumerRecords =
-                    kafkaConsumer.poll(Duration.ofMillis(timeInMills));
-            // 8.处理消息
-            // 将Consumer获取到的消息保存在集合中准备返回
-            for (ConsumerRecord record : consumerRecords) {
-                // 如果已经读完最多消息限制则直接跳出循环
-                if (recordList.size() == maxReads) break;
-                // 如果还需要读取则继续读取
-                recordList.add(record);
-            }
+            return KafkaMetadataClient.forBrokers(brokers).getLeaderTracker()
+                    .awaitNewLeader(new TopicPartition(topic, partition), oldLeader);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (Exception e) {
             e.printStackTrace();
-        } finally {
-            // 9.释放资源
-            if (kafkaConsumer != null) kafkaConsumer.close();
         }
-        return recordList;
+        return null;
     }
 
-    // 根据指定的Brokers/Topic/Partition获取对应的最新的Leader
-    // (不做,因为Kafka会自动选举新的Partition-Leader)
-    public static void findNewLeader(Map<String, Integer> brokers, String topic, int partition) {
-
+    /**
+     * <p>寻找指定Brokers-Topic-Partition新选出的Leader,以最近一次看到的Leader作为发生故障的Leader.
+     *
+     * @see #findNewLeader(Map, String, int, Node)
+     */
+    public static Node findNewLeader(Map<String, Integer> brokers, String topic, int partition) {
+        Node oldLeader = null;
+        try {
+            oldLeader = KafkaMetadataClient.forBrokers(brokers).getLeaderTracker()
+                    .currentLeader(new TopicPartition(topic, partition));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return findNewLeader(brokers, topic, partition, oldLeader);
     }
 
 }
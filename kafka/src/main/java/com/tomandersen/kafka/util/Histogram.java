@@ -0,0 +1,123 @@
+package com.tomandersen.kafka.util;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <h3>低开销的并发直方图.</h3>
+ * 以2的幂划分区间,每个区间再线性划分为4个桶,分位数的相对误差不超过25%.
+ * 每个桶使用{@link LongAdder}计数,多线程并发update()时无锁且几乎不产生竞争.
+ * <p>
+ * 分位数、平均值以及最大值基于最近一个完整的统计窗口,由调用方定期调用{@link #rotate()}结束当前窗口,
+ * 因此反映的是近期的分布而非启动以来的分布;{@link #getTotalCount()}为启动以来的累计值.
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ */
+public class Histogram {
+    // 小于4的值各占一个桶,之后每个2的幂区间占4个桶
+    private static final int BUCKET_COUNT = 4 + 61 * 4;
+
+    // 当前窗口
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+    private final LongAdder totalCount = new LongAdder();
+
+    // 最近一个完整窗口的快照
+    private volatile Snapshot snapshot = new Snapshot(new long[BUCKET_COUNT], 0, 0, 0);
+
+
+    public Histogram() {
+        for (int i = 0; i < BUCKET_COUNT; i++) buckets[i] = new LongAdder();
+    }
+
+    /**
+     * 记录一个值,负数按0处理
+     */
+    public void update(long value) {
+        if (value < 0) value = 0;
+        buckets[indexOf(value)].increment();
+        sum.add(value);
+        max.accumulate(value);
+        totalCount.increment();
+    }
+
+    /**
+     * 结束当前窗口,将其保存为快照并开始新的窗口.rotate()期间并发写入的值可能计入下一个窗口.
+     */
+    public synchronized void rotate() {
+        long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets[i].sumThenReset();
+            count += counts[i];
+        }
+        snapshot = new Snapshot(counts, count, sum.sumThenReset(), max.getThenReset());
+    }
+
+    static int indexOf(long value) {
+        if (value < 4) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) ((value >>> (exponent - 2)) & 3);
+        return 4 + (exponent - 2) * 4 + sub;
+    }
+
+    // 桶的上界(包含)
+    static long upperBound(int index) {
+        if (index < 4) return index;
+        int exponent = (index - 4) / 4 + 2;
+        int sub = (index - 4) % 4;
+        long bound = (4L + sub + 1) << (exponent - 2);
+        return bound < 0 ? Long.MAX_VALUE : bound - 1;
+    }
+
+    public long getTotalCount() {
+        return totalCount.sum();
+    }
+
+    public long getCount() {
+        return snapshot.count;
+    }
+
+    public double getMean() {
+        Snapshot current = snapshot;
+        return current.count == 0 ? 0 : (double) current.sum / current.count;
+    }
+
+    public long getMax() {
+        return snapshot.max;
+    }
+
+    /**
+     * 获取最近一个完整窗口的分位数,返回所在桶的上界(不超过窗口内的最大值)
+     *
+     * @param quantile 取值范围[0, 1]
+     */
+    public long getQuantile(double quantile) {
+        Snapshot current = snapshot;
+        if (current.count == 0) return 0;
+        long rank = (long) Math.ceil(quantile * current.count);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += current.counts[i];
+            if (seen >= rank && current.counts[i] > 0) return Math.min(upperBound(i), current.max);
+        }
+        return current.max;
+    }
+
+    private static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+    }
+}
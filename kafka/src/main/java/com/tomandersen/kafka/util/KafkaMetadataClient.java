@@ -0,0 +1,389 @@
+package com.tomandersen.kafka.util;
+
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.DescribeTopicsOptions;
+import org.apache.kafka.clients.admin.ListConsumerGroupOffsetsOptions;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.KafkaFuture;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.TopicPartitionInfo;
+import org.apache.kafka.common.errors.InterruptException;
+import org.apache.kafka.common.errors.InvalidMetadataException;
+import org.apache.kafka.common.errors.UnknownTopicOrPartitionException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <h3>长期复用、线程安全的Kafka元数据及Offset查询客户端.</h3>
+ * {@link CustomConsumes}原先每次调用都会创建并关闭一个新的KafkaConsumer,每次都要重新建立连接并拉取元数据.
+ * 此客户端内部只持有一个KafkaConsumer(以及按需创建的AdminClient)并在多次调用之间复用连接,
+ * Topic的Partition元数据(Leader、ISR等)按TTL缓存,缓存命中时无需访问Broker.遇到Leader变更等元数据错误时自动失效缓存并重试一次.
+ * <p>
+ * KafkaConsumer本身不是线程安全的,所有需要访问Broker的调用都通过一把锁串行执行,
+ * 缓存命中的调用不需要加锁.通过{@link #forBrokers}获取的实例按集群地址共享.
+ * <p>
+ * 批量查询接口({@link #endOffsets}、{@link #beginningOffsets}、{@link #committedOffsets})一次调用
+ * 查询任意多个Partition:end/beginning Offset按Leader分组,每个Broker只发送一个ListOffsets请求;
+ * ConsumerGroup已提交的Offset通过AdminClient向Group Coordinator发送一个OffsetFetch请求.
+ * 结果以{@link PartitionOffsets}返回.
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see CustomConsumes
+ */
+public class KafkaMetadataClient implements AutoCloseable {
+    // 默认的元数据缓存时间
+    public static final long DEFAULT_METADATA_TTL_MILLS = 30000;
+    // 访问Broker的默认超时时间
+    public static final long DEFAULT_REQUEST_TIMEOUT_MILLS = 5000;
+
+    // 按集群地址共享的实例
+    private static final ConcurrentMap<String, KafkaMetadataClient> SHARED = new ConcurrentHashMap<>();
+
+    private final String bootstrapServers;
+    private final long metadataTtlMills;
+    private final Duration requestTimeout;
+    private final KafkaConsumer<byte[], byte[]> consumer;
+    // 保护consumer的锁
+    private final ReentrantLock lock = new ReentrantLock();
+    // Topic -> 缓存的Partition元数据
+    private final ConcurrentMap<String, CachedTopic> topics = new ConcurrentHashMap<>();
+    // 刷新元数据或查询ConsumerGroup Offset时才创建,由lock保护
+    private AdminClient adminClient;
+    // 基于此客户端的Leader跟踪器,首次使用时创建
+    private volatile LeaderTracker leaderTracker;
+    private volatile boolean closed = false;
+
+
+    public KafkaMetadataClient(String bootstrapServers) {
+        this(bootstrapServers, DEFAULT_METADATA_TTL_MILLS, DEFAULT_REQUEST_TIMEOUT_MILLS);
+    }
+
+    public KafkaMetadataClient(String bootstrapServers, long metadataTtlMills, long requestTimeoutMills) {
+        this.bootstrapServers = bootstrapServers;
+        this.metadataTtlMills = metadataTtlMills;
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMills);
+        Properties props = new Properties();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        props.put(ConsumerConfig.CLIENT_ID_CONFIG, "metadata-client");
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+        this.consumer = new KafkaConsumer<>(props);
+    }
+
+    /**
+     * 获取指定集群共享的客户端实例,不存在或已关闭时创建
+     *
+     * @param brokers 指定的Kafka集群,格式为<"host","port">
+     */
+    public static KafkaMetadataClient forBrokers(Map<String, Integer> brokers) {
+        return forBootstrapServers(toBootstrapServers(brokers));
+    }
+
+    /**
+     * 获取指定集群共享的客户端实例,不存在或已关闭时创建
+     *
+     * @param bootstrapServers 格式同bootstrap.servers配置
+     */
+    public static KafkaMetadataClient forBootstrapServers(String bootstrapServers) {
+        return SHARED.compute(bootstrapServers, (key, client) ->
+                client == null || client.closed ? new KafkaMetadataClient(key) : client);
+    }
+
+    // 将<"host","port">格式的集群地址转换为bootstrap.servers,端口为空时使用9092
+    public static String toBootstrapServers(Map<String, Integer> brokers) {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Integer> broker : new TreeMap<>(brokers).entrySet()) {
+            if (builder.length() > 0) builder.append(',');
+            builder.append(broker.getKey()).append(':').append(broker.getValue() == null ? 9092 : broker.getValue());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 获取指定Topic的Partition元数据,优先使用缓存
+     *
+     * @return Topic不存在时返回空集合
+     */
+    public List<PartitionInfo> partitionsFor(String topic) {
+        CachedTopic cached = topics.get(topic);
+        if (cached != null && cached.expiresAt > System.currentTimeMillis()) return cached.partitions;
+        return refresh(topic);
+    }
+
+    /**
+     * 获取指定Partition的Leader,当前没有Leader时强制刷新一次元数据
+     *
+     * @return 找不到Partition或没有Leader时返回null
+     */
+    public Node leaderFor(String topic, int partition) {
+        PartitionInfo info = partitionInfo(topic, partition);
+        if (info == null || info.leader() == null || info.leader().isEmpty()) {
+            info = findPartition(refresh(topic), partition);
+        }
+        return info == null || info.leader() == null || info.leader().isEmpty() ? null : info.leader();
+    }
+
+    public PartitionInfo partitionInfo(String topic, int partition) {
+        return findPartition(partitionsFor(topic), partition);
+    }
+
+    private static PartitionInfo findPartition(List<PartitionInfo> partitions, int partition) {
+        for (PartitionInfo info : partitions) {
+            if (info.partition() == partition) return info;
+        }
+        return null;
+    }
+
+    /**
+     * 从Broker重新拉取指定Topic的元数据并更新缓存.
+     * KafkaConsumer.partitionsFor在其内部元数据已包含该Topic时直接返回本地结果,无法感知Leader变更,
+     * 因此通过AdminClient.describeTopics向Broker发送MetadataRequest.
+     */
+    public List<PartitionInfo> refresh(String topic) {
+        List<PartitionInfo> partitions = new ArrayList<>();
+        try {
+            TopicDescription description = await(adminClient().describeTopics(Collections.singleton(topic),
+                    new DescribeTopicsOptions().timeoutMs((int) requestTimeout.toMillis())).values().get(topic),
+                    "describe topic " + topic);
+            for (TopicPartitionInfo info : description.partitions()) {
+                partitions.add(new PartitionInfo(topic, info.partition(), info.leader(),
+                        info.replicas().toArray(new Node[0]), info.isr().toArray(new Node[0])));
+            }
+        } catch (UnknownTopicOrPartitionException e) {
+            // Topic不存在时缓存空结果
+        }
+        partitions = Collections.unmodifiableList(partitions);
+        topics.put(topic, new CachedTopic(partitions, System.currentTimeMillis() + metadataTtlMills));
+        return partitions;
+    }
+
+    /**
+     * 使指定Topic的元数据缓存失效,例如调用方遇到NotLeaderForPartition等错误时
+     */
+    public void invalidate(String topic) {
+        topics.remove(topic);
+    }
+
+    /**
+     * 获取指定Partition的endOffset,元数据错误时失效缓存并重试一次
+     */
+    public long endOffset(TopicPartition partition) {
+        Map<TopicPartition, Long> offsets = withMetadataRetry(Collections.singleton(partition),
+                c -> c.endOffsets(Collections.singletonList(partition), requestTimeout));
+        Long offset = offsets.get(partition);
+        return offset == null ? 0 : offset;
+    }
+
+    /**
+     * 获取指定Partition的beginningOffset,元数据错误时失效缓存并重试一次
+     */
+    public long beginningOffset(TopicPartition partition) {
+        Map<TopicPartition, Long> offsets = withMetadataRetry(Collections.singleton(partition),
+                c -> c.beginningOffsets(Collections.singletonList(partition), requestTimeout));
+        Long offset = offsets.get(partition);
+        return offset == null ? 0 : offset;
+    }
+
+    /**
+     * 获取指定Topic的所有Partition,优先使用缓存的元数据,不存在的Topic将被忽略
+     */
+    public List<TopicPartition> partitionsOf(Collection<String> topics) {
+        List<TopicPartition> partitions = new ArrayList<>();
+        for (String topic : topics) {
+            for (PartitionInfo info : partitionsFor(topic)) {
+                partitions.add(new TopicPartition(info.topic(), info.partition()));
+            }
+        }
+        return partitions;
+    }
+
+    /**
+     * 批量获取endOffset,按Leader分组后每个Broker只发送一个请求
+     */
+    public PartitionOffsets endOffsets(Collection<TopicPartition> partitions) {
+        if (partitions.isEmpty()) return PartitionOffsets.of(Collections.emptyMap());
+        return PartitionOffsets.of(withMetadataRetry(partitions, c -> c.endOffsets(partitions, requestTimeout)));
+    }
+
+    /**
+     * 批量获取beginningOffset,按Leader分组后每个Broker只发送一个请求
+     */
+    public PartitionOffsets beginningOffsets(Collection<TopicPartition> partitions) {
+        if (partitions.isEmpty()) return PartitionOffsets.of(Collections.emptyMap());
+        return PartitionOffsets.of(withMetadataRetry(partitions, c -> c.beginningOffsets(partitions, requestTimeout)));
+    }
+
+    /**
+     * 批量获取ConsumerGroup已提交的Offset,只发送一个OffsetFetch请求
+     *
+     * @param partitions 要查询的Partition,为null时返回该Group提交过的所有Partition
+     * @return 未提交过Offset的Partition为{@link PartitionOffsets#UNKNOWN}
+     */
+    public PartitionOffsets committedOffsets(String groupId, Collection<TopicPartition> partitions) {
+        if (partitions != null && partitions.isEmpty()) return PartitionOffsets.of(Collections.emptyMap());
+        // 不指定Partition:kafka-clients 2.1中指定了未提交过Offset的Partition时,Broker返回-1
+        // 会导致AdminClient构造OffsetAndMetadata失败,因此总是获取整个Group的Offset后在本地过滤
+        ListConsumerGroupOffsetsOptions options = new ListConsumerGroupOffsetsOptions()
+                .timeoutMs((int) requestTimeout.toMillis());
+        Map<TopicPartition, OffsetAndMetadata> committed = await(adminClient()
+                .listConsumerGroupOffsets(groupId, options).partitionsToOffsetAndMetadata(),
+                "list offsets of consumer group " + groupId);
+        Map<TopicPartition, Long> offsets = new HashMap<>(committed.size() * 2);
+        if (partitions == null) {
+            for (Map.Entry<TopicPartition, OffsetAndMetadata> entry : committed.entrySet()) {
+                offsets.put(entry.getKey(), entry.getValue() == null ? null : entry.getValue().offset());
+            }
+        } else {
+            // 未提交过的Partition同样放入结果,使其在PartitionOffsets中占位为UNKNOWN
+            for (TopicPartition partition : partitions) {
+                OffsetAndMetadata offset = committed.get(partition);
+                offsets.put(partition, offset == null ? null : offset.offset());
+            }
+        }
+        return PartitionOffsets.of(offsets);
+    }
+
+    /**
+     * 批量获取多个ConsumerGroup提交过的所有Offset,所有Group的OffsetFetch请求同时发出
+     *
+     * @return groupId -> 已提交的Offset,按传入顺序排列
+     */
+    public Map<String, PartitionOffsets> committedOffsets(Collection<String> groupIds) {
+        Map<String, KafkaFuture<Map<TopicPartition, OffsetAndMetadata>>> futures = new LinkedHashMap<>();
+        AdminClient admin = adminClient();
+        for (String groupId : groupIds) {
+            futures.put(groupId, admin.listConsumerGroupOffsets(groupId, new ListConsumerGroupOffsetsOptions()
+                    .timeoutMs((int) requestTimeout.toMillis())).partitionsToOffsetAndMetadata());
+        }
+        Map<String, PartitionOffsets> result = new LinkedHashMap<>();
+        for (Map.Entry<String, KafkaFuture<Map<TopicPartition, OffsetAndMetadata>>> entry : futures.entrySet()) {
+            Map<TopicPartition, OffsetAndMetadata> committed = await(entry.getValue(),
+                    "list offsets of consumer group " + entry.getKey());
+            Map<TopicPartition, Long> offsets = new HashMap<>(committed.size() * 2);
+            for (Map.Entry<TopicPartition, OffsetAndMetadata> offset : committed.entrySet()) {
+                offsets.put(offset.getKey(), offset.getValue() == null ? null : offset.getValue().offset());
+            }
+            result.put(entry.getKey(), PartitionOffsets.of(offsets));
+        }
+        return result;
+    }
+
+    // 等待AdminClient请求完成,超时由请求的timeoutMs控制,超时后以TimeoutException失败
+    private static <T> T await(KafkaFuture<T> future, String action) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new InterruptException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof KafkaException ? (KafkaException) e.getCause()
+                    : new KafkaException("Failed to " + action, e.getCause());
+        }
+    }
+
+    // 获取内部的AdminClient,首次使用时创建
+    private AdminClient adminClient() {
+        lock.lock();
+        try {
+            if (closed) throw new IllegalStateException("KafkaMetadataClient for " + bootstrapServers + " is closed");
+            if (adminClient == null) {
+                Properties props = new Properties();
+                props.put(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+                props.put(AdminClientConfig.CLIENT_ID_CONFIG, "metadata-client-admin");
+                adminClient = AdminClient.create(props);
+            }
+            return adminClient;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 执行访问Broker的操作,元数据错误时失效相关Topic的缓存后重试一次
+    <T> T withMetadataRetry(Collection<TopicPartition> partitions, ConsumerCall<T> call) {
+        try {
+            return withConsumer(call);
+        } catch (InvalidMetadataException e) {
+            for (TopicPartition partition : partitions) invalidate(partition.topic());
+            return withConsumer(call);
+        }
+    }
+
+    // 持有锁访问内部的KafkaConsumer
+    <T> T withConsumer(ConsumerCall<T> call) {
+        lock.lock();
+        try {
+            if (closed) throw new IllegalStateException("KafkaMetadataClient for " + bootstrapServers + " is closed");
+            return call.apply(consumer);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获取基于此客户端的共享LeaderTracker
+     */
+    public LeaderTracker getLeaderTracker() {
+        LeaderTracker tracker = leaderTracker;
+        if (tracker == null) {
+            synchronized (this) {
+                if (leaderTracker == null) leaderTracker = new LeaderTracker(this);
+                tracker = leaderTracker;
+            }
+        }
+        return tracker;
+    }
+
+    public String getBootstrapServers() {
+        return bootstrapServers;
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) return;
+            closed = true;
+            consumer.close();
+            if (adminClient != null) adminClient.close();
+        } finally {
+            lock.unlock();
+        }
+        SHARED.remove(bootstrapServers, this);
+        topics.clear();
+        LeaderTracker tracker = leaderTracker;
+        if (tracker != null) tracker.close();
+    }
+
+    /**
+     * 在持有锁的情况下对KafkaConsumer执行的操作
+     */
+    @FunctionalInterface
+    interface ConsumerCall<T> {
+        T apply(KafkaConsumer<byte[], byte[]> consumer);
+    }
+
+    private static final class CachedTopic {
+        private final List<PartitionInfo> partitions;
+        private final long expiresAt;
+
+        CachedTopic(List<PartitionInfo> partitions, long expiresAt) {
+            this.partitions = partitions;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.tomandersen.kafka.util;
+
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.LeaderNotAvailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h3>跟踪Partition的Leader及ISR变化.</h3>
+ * 基于{@link KafkaMetadataClient}的元数据,记录每个Partition最近一次看到的Leader和ISR,
+ * 每次{@link #check}刷新元数据后与之比较,发生变化时通知注册的{@link Listener}.
+ * <p>
+ * 默认为拉取模式:只有调用{@link #check}或{@link #awaitNewLeader}时才会访问Broker,没有调用时Listener不会收到通知.
+ * 需要主动发现变化时通过{@link #start}按固定周期检查指定的Topic,此时Listener在后台的守护线程中回调,
+ * 通过{@link #close}停止(关闭KafkaMetadataClient时同样会停止).
+ * <p>
+ * Broker故障转移期间,{@link #awaitNewLeader}以有限的重试次数和指数退避等待新Leader选出,
+ * 超出重试预算时立即抛出{@link LeaderNotAvailableException},而不是无限期阻塞.
+ * 每次刷新的超时时间即KafkaMetadataClient的请求超时时间.
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see CustomConsumes#findNewLeader
+ */
+public class LeaderTracker implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(LeaderTracker.class);
+
+    // 默认的最大重试次数
+    public static final int DEFAULT_MAX_RETRIES = 5;
+    // 默认的初始重试间隔,之后每次翻倍
+    public static final long DEFAULT_RETRY_BACKOFF_MILLS = 100;
+    // 重试间隔上限
+    private static final long MAX_RETRY_BACKOFF_MILLS = 1000;
+
+    private final KafkaMetadataClient client;
+    private final int maxRetries;
+    private final long retryBackoffMills;
+    // 最近一次看到的Partition状态
+    private final ConcurrentMap<TopicPartition, PartitionState> states = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // 周期检查使用的线程,未调用start()时为null
+    private ScheduledExecutorService scheduler;
+
+
+    public LeaderTracker(KafkaMetadataClient client) {
+        this(client, DEFAULT_MAX_RETRIES, DEFAULT_RETRY_BACKOFF_MILLS);
+    }
+
+    public LeaderTracker(KafkaMetadataClient client, int maxRetries, long retryBackoffMills) {
+        this.client = client;
+        this.maxRetries = maxRetries;
+        this.retryBackoffMills = retryBackoffMills;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 开始按固定周期在后台检查指定的Topic,单次检查失败只记录日志,不影响后续检查
+     *
+     * @param topics        要检查的Topic
+     * @param intervalMills 检查周期
+     */
+    public synchronized void start(Collection<String> topics, long intervalMills) {
+        if (intervalMills <= 0) throw new IllegalArgumentException("intervalMills must be greater than 0");
+        if (scheduler != null) throw new IllegalStateException("LeaderTracker has already been started");
+        List<String> watched = new ArrayList<>(topics);
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "leader-tracker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            for (String topic : watched) {
+                try {
+                    check(topic);
+                } catch (RuntimeException e) {
+                    logger.warn("Failed to check leaders of " + topic, e);
+                }
+            }
+        }, 0, intervalMills, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止周期检查,之后仍可以手动调用{@link #check}
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduler == null) return;
+        scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    /**
+     * 从Broker刷新指定Topic的元数据,与上次看到的状态比较并通知Listener.
+     * 第一次看到的Partition只记录状态,不视为变化.
+     * 周期检查与手动调用可能同时发生,因此串行执行,保证每次变化只通知一次.
+     *
+     * @return Leader发生变化的Partition
+     */
+    public List<TopicPartition> check(String topic) {
+        synchronized (states) {
+            return compare(client.refresh(topic));
+        }
+    }
+
+    private List<TopicPartition> compare(List<PartitionInfo> partitions) {
+        List<TopicPartition> changed = new ArrayList<>();
+        for (PartitionInfo info : partitions) {
+            TopicPartition partition = new TopicPartition(info.topic(), info.partition());
+            PartitionState current = new PartitionState(info);
+            PartitionState previous = states.put(partition, current);
+            if (previous == null) continue;
+            if (previous.leader != current.leader) {
+                changed.add(partition);
+                logger.info("Leader of " + partition + " changed from " + previous.leader + " to " + current.leader);
+                for (Listener listener : listeners) listener.onLeaderChange(partition, previous.leaderNode, current.leaderNode);
+            }
+            if (!previous.isr.equals(current.isr)) {
+                for (Listener listener : listeners) listener.onIsrChange(partition, previous.isrNodes, current.isrNodes);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 获取最近一次看到的Leader,尚未看到过该Partition时从缓存的元数据中获取
+     *
+     * @return 没有Leader时返回null
+     */
+    public Node currentLeader(TopicPartition partition) {
+        PartitionState state = states.get(partition);
+        if (state != null) return state.leaderNode;
+        PartitionInfo info = client.partitionInfo(partition.topic(), partition.partition());
+        if (info == null) return null;
+        state = new PartitionState(info);
+        states.putIfAbsent(partition, state);
+        return state.leaderNode;
+    }
+
+    /**
+     * 等待指定Partition选出新的Leader.
+     * 第一次刷新时不接受与failedLeader相同的Leader(元数据可能尚未更新),之后的重试中接受,
+     * 因为原Leader可能已经恢复.
+     *
+     * @param failedLeader 发生故障的Leader,为null时返回第一个可用的Leader
+     * @return 新的Leader
+     * @throws LeaderNotAvailableException 超出重试预算仍没有可用的Leader
+     */
+    public Node awaitNewLeader(TopicPartition partition, Node failedLeader) throws InterruptedException {
+        long backoff = retryBackoffMills;
+        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+            try {
+                check(partition.topic());
+                Node leader = states.containsKey(partition) ? states.get(partition).leaderNode : null;
+                if (leader != null && (failedLeader == null || attempt > 0 || leader.id() != failedLeader.id()))
+                    return leader;
+            } catch (RuntimeException e) {
+                // 刷新失败同样计入重试次数
+                logger.warn("Failed to refresh metadata of " + partition + ", attempt " + (attempt + 1), e);
+            }
+            if (attempt < maxRetries) {
+                Thread.sleep(backoff);
+                backoff = Math.min(backoff * 2, MAX_RETRY_BACKOFF_MILLS);
+            }
+        }
+        throw new LeaderNotAvailableException("No leader available for " + partition + " after "
+                + (maxRetries + 1) + " attempts");
+    }
+
+    /**
+     * Leader或ISR变化的回调,在调用{@link #check}的线程或周期检查的线程中执行
+     */
+    public interface Listener {
+        void onLeaderChange(TopicPartition partition, Node oldLeader, Node newLeader);
+
+        default void onIsrChange(TopicPartition partition, List<Node> oldIsr, List<Node> newIsr) {
+        }
+    }
+
+    private static final class PartitionState {
+        // 没有Leader时为-1
+        private final int leader;
+        private final Node leaderNode;
+        private final Set<Integer> isr;
+        private final List<Node> isrNodes;
+
+        PartitionState(PartitionInfo info) {
+            Node leader = info.leader();
+            this.leaderNode = leader == null || leader.isEmpty() ? null : leader;
+            this.leader = leaderNode == null ? -1 : leaderNode.id();
+            Node[] isr = info.inSyncReplicas() == null ? new Node[0] : info.inSyncReplicas();
+            this.isrNodes = Collections.unmodifiableList(Arrays.asList(isr));
+            Set<Integer> ids = new HashSet<>();
+            for (Node node : isr) ids.add(node.id());
+            this.isr = ids;
+        }
+    }
+}
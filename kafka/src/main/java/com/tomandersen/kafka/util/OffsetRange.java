@@ -0,0 +1,72 @@
+package com.tomandersen.kafka.util;
+
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Objects;
+
+/**
+ * <h3>单个Partition上的Offset区间[startOffset, endOffset).</h3>
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see OffsetRangeReader
+ */
+public final class OffsetRange {
+    private final TopicPartition partition;
+    private final long startOffset;
+    private final long endOffset;
+
+
+    public OffsetRange(TopicPartition partition, long startOffset, long endOffset) {
+        if (startOffset < 0 || endOffset < 0)
+            throw new IllegalArgumentException("Offsets of " + partition + " must be non-negative: ["
+                    + startOffset + ", " + endOffset + ")");
+        this.partition = Objects.requireNonNull(partition);
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+    }
+
+    public static OffsetRange of(String topic, int partition, long startOffset, long endOffset) {
+        return new OffsetRange(new TopicPartition(topic, partition), startOffset, endOffset);
+    }
+
+    public TopicPartition partition() {
+        return partition;
+    }
+
+    public long startOffset() {
+        return startOffset;
+    }
+
+    public long endOffset() {
+        return endOffset;
+    }
+
+    // 区间内的Offset个数,Compact过的Topic实际消息数可能更少
+    public long size() {
+        return Math.max(0, endOffset - startOffset);
+    }
+
+    public boolean isEmpty() {
+        return endOffset <= startOffset;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof OffsetRange)) return false;
+        OffsetRange that = (OffsetRange) o;
+        return startOffset == that.startOffset && endOffset == that.endOffset && partition.equals(that.partition);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(partition, startOffset, endOffset);
+    }
+
+    @Override
+    public String toString() {
+        return partition + "[" + startOffset + ", " + endOffset + ")";
+    }
+}
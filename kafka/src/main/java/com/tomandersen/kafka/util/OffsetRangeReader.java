@@ -0,0 +1,337 @@
+package com.tomandersen.kafka.util;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.InterruptException;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * <h3>流式读取一个或多个Partition上指定Offset区间的消息.</h3>
+ * 持续poll直到每个Partition都读到其endOffset(不包含)为止,已读完的Partition会被pause.
+ * 内存中只保留最近一次poll返回的消息,窗口大小由max.poll.records和fetch.max.bytes等配置控制,
+ * 因此可以用于导出数百万条消息而不必全部加载到内存.
+ * <p>
+ * 打开时会将区间裁剪到Partition当前的[beginningOffset, endOffset)范围内;读取过程中消息因过期被删除时
+ * 抛出OffsetOutOfRangeException而不是静默跳过.连续timeoutMills没有读到新消息时抛出{@link TimeoutException}.
+ * <p>
+ * Broker故障转移时,连续一段时间(不超过timeoutMills的1/3,最长5秒)没有进展就通过{@link LeaderTracker}
+ * 检查剩余Partition的Leader:Leader已经变化或正在选举时,等待新Leader选出后用新的KafkaConsumer从当前位置继续读取,
+ * 使Fetch请求立即发往新Leader.每个Reader最多重新路由{@link #DEFAULT_MAX_REROUTES}次,超出后按超时处理.
+ * <p>
+ * 实例不是线程安全的.需要按Partition并行读取时使用{@link #stream},每个拆分出的子任务持有自己的KafkaConsumer.
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see OffsetRange
+ * @see CustomConsumes#getRecordsFrom
+ */
+public class OffsetRangeReader<K, V> implements Iterator<ConsumerRecord<K, V>>, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(OffsetRangeReader.class);
+
+    // 默认的单次poll超时时间
+    public static final long DEFAULT_POLL_TIMEOUT_MILLS = 1000;
+    // 默认的无进展超时时间
+    public static final long DEFAULT_TIMEOUT_MILLS = 30000;
+    // 最大重新路由次数
+    public static final int DEFAULT_MAX_REROUTES = 3;
+    // 判定为停滞并检查Leader的最长时间
+    private static final long MAX_STALL_MILLS = 5000;
+
+    private final Properties config;
+    private KafkaConsumer<K, V> consumer;
+    private final Duration pollTimeout;
+    private final long timeoutMills;
+    private final long stallMills;
+    // 各Partition的endOffset(不包含)
+    private final Map<TopicPartition, Long> endOffsets = new HashMap<>();
+    // 尚未读完的Partition
+    private final Set<TopicPartition> remaining = new HashSet<>();
+    private final List<OffsetRange> ranges;
+    // 当前KafkaConsumer发送Fetch请求的Leader,没有Leader时为-1
+    private final Map<TopicPartition, Integer> routedLeaders = new HashMap<>();
+
+    private Iterator<ConsumerRecord<K, V>> current = Collections.emptyIterator();
+    private ConsumerRecord<K, V> next;
+    private long lastProgress;
+    private long lastLeaderCheck;
+    private int reroutes = 0;
+    private boolean closed = false;
+
+
+    public OffsetRangeReader(Properties props, Collection<OffsetRange> ranges) {
+        this(props, ranges, DEFAULT_POLL_TIMEOUT_MILLS, DEFAULT_TIMEOUT_MILLS);
+    }
+
+    /**
+     * @param props        KafkaConsumer配置,至少包含bootstrap.servers和反序列化器,不需要group.id
+     * @param ranges       要读取的区间,每个Partition最多一个
+     * @param pollTimeout  单次poll的超时时间
+     * @param timeoutMills 连续多久没有读到新消息时抛出TimeoutException
+     */
+    public OffsetRangeReader(Properties props, Collection<OffsetRange> ranges, long pollTimeout, long timeoutMills) {
+        this.ranges = Collections.unmodifiableList(new ArrayList<>(ranges));
+        this.pollTimeout = Duration.ofMillis(pollTimeout);
+        this.timeoutMills = timeoutMills;
+        this.stallMills = Math.min(MAX_STALL_MILLS, timeoutMills / 3);
+        this.config = new Properties();
+        config.putAll(props);
+        // 只读取数据,不提交Offset;消息被删除时直接报错
+        config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        config.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "none");
+        this.consumer = new KafkaConsumer<>(config);
+        try {
+            open();
+        } catch (RuntimeException e) {
+            consumer.close();
+            throw e;
+        }
+    }
+
+    private void open() {
+        List<TopicPartition> partitions = new ArrayList<>(ranges.size());
+        for (OffsetRange range : ranges) {
+            if (endOffsets.put(range.partition(), range.endOffset()) != null)
+                throw new IllegalArgumentException("Duplicate range for " + range.partition());
+            partitions.add(range.partition());
+        }
+        // 1.将区间裁剪到Partition当前的有效范围,每个Broker各一个请求
+        Map<TopicPartition, Long> beginning = consumer.beginningOffsets(partitions);
+        Map<TopicPartition, Long> end = consumer.endOffsets(partitions);
+        consumer.assign(partitions);
+        for (OffsetRange range : ranges) {
+            TopicPartition partition = range.partition();
+            long start = Math.max(range.startOffset(), beginning.getOrDefault(partition, 0L));
+            long stop = Math.min(range.endOffset(), end.getOrDefault(partition, 0L));
+            endOffsets.put(partition, stop);
+            // 2.定位到起始Offset,空区间直接pause
+            if (start < stop) {
+                consumer.seek(partition, start);
+                remaining.add(partition);
+            }
+        }
+        List<TopicPartition> empty = new ArrayList<>(partitions);
+        empty.removeAll(remaining);
+        consumer.pause(empty);
+        updateRoutedLeaders();
+        lastProgress = System.currentTimeMillis();
+    }
+
+    // 记录KafkaConsumer内部元数据中的Leader,即其Fetch请求实际发往的Broker
+    private void updateRoutedLeaders() {
+        Set<String> topics = new HashSet<>();
+        for (TopicPartition partition : endOffsets.keySet()) topics.add(partition.topic());
+        for (String topic : topics) {
+            List<PartitionInfo> infos = consumer.partitionsFor(topic);
+            if (infos == null) continue;
+            for (PartitionInfo info : infos) {
+                TopicPartition partition = new TopicPartition(topic, info.partition());
+                if (!endOffsets.containsKey(partition)) continue;
+                routedLeaders.put(partition, info.leader() == null || info.leader().isEmpty() ? -1 : info.leader().id());
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null) {
+            if (current.hasNext()) {
+                ConsumerRecord<K, V> record = current.next();
+                // 过滤超出endOffset的消息
+                if (record.offset() < endOffsets.get(new TopicPartition(record.topic(), record.partition())))
+                    next = record;
+            } else if (remaining.isEmpty() || closed) {
+                return false;
+            } else {
+                fetch();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public ConsumerRecord<K, V> next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        ConsumerRecord<K, V> record = next;
+        next = null;
+        return record;
+    }
+
+    // 拉取下一批消息,并pause已经读完的Partition
+    private void fetch() {
+        ConsumerRecords<K, V> records = consumer.poll(pollTimeout);
+        long now = System.currentTimeMillis();
+        List<TopicPartition> finished = new ArrayList<>();
+        for (TopicPartition partition : remaining) {
+            // Compact或事务标记可能导致Offset不连续,因此以position而不是最后一条消息的Offset判断
+            if (consumer.position(partition) >= endOffsets.get(partition)) finished.add(partition);
+        }
+        if (!finished.isEmpty()) {
+            remaining.removeAll(finished);
+            consumer.pause(finished);
+        }
+        current = records.iterator();
+        if (!records.isEmpty() || !finished.isEmpty()) {
+            lastProgress = now;
+        } else if (now - lastProgress > timeoutMills) {
+            throw new TimeoutException("No records read for " + timeoutMills + "ms, remaining partitions: " + remaining);
+        } else if (now - lastProgress > stallMills && now - lastLeaderCheck > stallMills && reroutes < DEFAULT_MAX_REROUTES) {
+            lastLeaderCheck = now;
+            if (reroute()) lastProgress = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 剩余Partition的Leader与当前KafkaConsumer使用的不同时,等待新Leader选出并重建KafkaConsumer
+     *
+     * @return 是否重新路由
+     */
+    private boolean reroute() {
+        LeaderTracker tracker = KafkaMetadataClient.forBootstrapServers(bootstrapServers()).getLeaderTracker();
+        Set<String> topics = new HashSet<>();
+        for (TopicPartition partition : remaining) topics.add(partition.topic());
+        for (String topic : topics) tracker.check(topic);
+        // KafkaConsumer遇到断连等错误时会自行更新元数据,只有其仍在使用旧Leader时才需要重新路由
+        updateRoutedLeaders();
+        Map<TopicPartition, Integer> moved = new HashMap<>();
+        for (TopicPartition partition : remaining) {
+            Node leader = tracker.currentLeader(partition);
+            try {
+                // 正在选举时在有限的重试次数内等待,超出后抛出LeaderNotAvailableException
+                if (leader == null) leader = tracker.awaitNewLeader(partition, null);
+            } catch (InterruptedException e) {
+                throw new InterruptException(e);
+            }
+            if (leader.id() != routedLeaders.getOrDefault(partition, -1)) moved.put(partition, leader.id());
+        }
+        if (moved.isEmpty()) return false;
+        reroutes++;
+        logger.info("Leaders of " + moved.keySet() + " moved to " + moved.values()
+                + ", re-routing fetches (" + reroutes + "/" + DEFAULT_MAX_REROUTES + ")");
+        // 从当前位置继续读取,已经poll到的消息仍保留在current中
+        Map<TopicPartition, Long> positions = new HashMap<>();
+        for (TopicPartition partition : remaining) positions.put(partition, consumer.position(partition));
+        consumer.close(Duration.ZERO);
+        consumer = new KafkaConsumer<>(config);
+        consumer.assign(endOffsets.keySet());
+        List<TopicPartition> paused = new ArrayList<>(endOffsets.keySet());
+        paused.removeAll(remaining);
+        consumer.pause(paused);
+        for (Map.Entry<TopicPartition, Long> entry : positions.entrySet()) consumer.seek(entry.getKey(), entry.getValue());
+        routedLeaders.putAll(moved);
+        return true;
+    }
+
+    private String bootstrapServers() {
+        Object servers = config.get(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG);
+        if (servers instanceof Collection) {
+            StringBuilder builder = new StringBuilder();
+            for (Object server : (Collection<?>) servers) {
+                if (builder.length() > 0) builder.append(',');
+                builder.append(server);
+            }
+            return builder.toString();
+        }
+        return String.valueOf(servers);
+    }
+
+    public List<OffsetRange> getRanges() {
+        return ranges;
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        consumer.close();
+    }
+
+    /**
+     * 以Stream形式读取指定区间的消息,并行Stream按Partition拆分,每个子任务使用独立的KafkaConsumer.
+     * 同一Partition内的消息按Offset顺序返回.Stream需要关闭(例如使用try-with-resources),
+     * 以释放提前终止时尚未读完的KafkaConsumer.
+     *
+     * @param parallel 是否并行读取
+     */
+    public static <K, V> Stream<ConsumerRecord<K, V>> stream(Properties props, Collection<OffsetRange> ranges, boolean parallel) {
+        RangeSpliterator<K, V> spliterator = new RangeSpliterator<>(props, new ArrayList<>(ranges),
+                new ConcurrentLinkedQueue<>());
+        return StreamSupport.stream(spliterator, parallel).onClose(spliterator::closeAll);
+    }
+
+    /**
+     * 按Partition拆分的Spliterator,首次读取时才创建OffsetRangeReader,读完后立即关闭
+     */
+    private static final class RangeSpliterator<K, V> implements Spliterator<ConsumerRecord<K, V>> {
+        private final Properties props;
+        private final List<OffsetRange> ranges;
+        // 所有子任务打开的Reader,用于Stream关闭时统一释放
+        private final Queue<OffsetRangeReader<K, V>> opened;
+        private OffsetRangeReader<K, V> reader;
+        private boolean done = false;
+
+        RangeSpliterator(Properties props, List<OffsetRange> ranges, Queue<OffsetRangeReader<K, V>> opened) {
+            this.props = props;
+            this.ranges = ranges;
+            this.opened = opened;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super ConsumerRecord<K, V>> action) {
+            if (done) return false;
+            if (reader == null) {
+                reader = new OffsetRangeReader<>(props, ranges);
+                opened.add(reader);
+            }
+            if (reader.hasNext()) {
+                action.accept(reader.next());
+                return true;
+            }
+            done = true;
+            reader.close();
+            opened.remove(reader);
+            return false;
+        }
+
+        @Override
+        public Spliterator<ConsumerRecord<K, V>> trySplit() {
+            // 已经开始读取或只剩一个Partition时不再拆分
+            if (reader != null || done || ranges.size() < 2) return null;
+            List<OffsetRange> head = ranges.subList(0, ranges.size() / 2);
+            RangeSpliterator<K, V> prefix = new RangeSpliterator<>(props, new ArrayList<>(head), opened);
+            head.clear();
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            long size = 0;
+            for (OffsetRange range : ranges) size += range.size();
+            return size;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+
+        void closeAll() {
+            OffsetRangeReader<K, V> opened;
+            while ((opened = this.opened.poll()) != null) opened.close();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.tomandersen.kafka.util;
+
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.*;
+
+/**
+ * <h3>按Topic组织的Partition Offset集合.</h3>
+ * 每个Topic的Offset保存在以Partition ID为下标的long[]中,查询不需要创建TopicPartition对象,
+ * 也没有Long装箱开销,适合一次性获取数百上千个Partition的Offset后做Lag等计算.
+ * 不存在或未知的Offset为{@link #UNKNOWN}.实例创建后不可修改.
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see KafkaMetadataClient
+ */
+public final class PartitionOffsets {
+    // 未知的Offset,例如Partition不存在或ConsumerGroup未提交过Offset
+    public static final long UNKNOWN = -1;
+
+    private static final long[] EMPTY = new long[0];
+
+    private final Map<String, long[]> offsets;
+    private final int size;
+
+
+    private PartitionOffsets(Map<String, long[]> offsets, int size) {
+        this.offsets = offsets;
+        this.size = size;
+    }
+
+    /**
+     * 由TopicPartition到Offset的映射创建,值为null的条目视为未知
+     */
+    public static PartitionOffsets of(Map<TopicPartition, Long> source) {
+        // 1.计算每个Topic的最大Partition ID
+        Map<String, Integer> lengths = new HashMap<>();
+        for (TopicPartition partition : source.keySet()) {
+            lengths.merge(partition.topic(), partition.partition() + 1, Math::max);
+        }
+        // 2.填充数组
+        Map<String, long[]> offsets = new HashMap<>(lengths.size() * 2);
+        for (Map.Entry<String, Integer> entry : lengths.entrySet()) {
+            long[] array = new long[entry.getValue()];
+            Arrays.fill(array, UNKNOWN);
+            offsets.put(entry.getKey(), array);
+        }
+        int size = 0;
+        for (Map.Entry<TopicPartition, Long> entry : source.entrySet()) {
+            if (entry.getValue() == null) continue;
+            offsets.get(entry.getKey().topic())[entry.getKey().partition()] = entry.getValue();
+            size++;
+        }
+        return new PartitionOffsets(offsets, size);
+    }
+
+    public long get(String topic, int partition) {
+        long[] array = offsets.get(topic);
+        return array == null || partition < 0 || partition >= array.length ? UNKNOWN : array[partition];
+    }
+
+    public long get(TopicPartition partition) {
+        return get(partition.topic(), partition.partition());
+    }
+
+    /**
+     * 获取指定Topic所有Partition的Offset,下标为Partition ID,返回的数组不能修改
+     */
+    public long[] get(String topic) {
+        long[] array = offsets.get(topic);
+        return array == null ? EMPTY : array;
+    }
+
+    public Set<String> topics() {
+        return Collections.unmodifiableSet(offsets.keySet());
+    }
+
+    // 已知Offset的Partition个数
+    public int size() {
+        return size;
+    }
+
+    public Map<TopicPartition, Long> toMap() {
+        Map<TopicPartition, Long> map = new HashMap<>(size * 2);
+        for (Map.Entry<String, long[]> entry : offsets.entrySet()) {
+            long[] array = entry.getValue();
+            for (int i = 0; i < array.length; i++) {
+                if (array[i] != UNKNOWN) map.put(new TopicPartition(entry.getKey(), i), array[i]);
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("PartitionOffsets{");
+        for (Map.Entry<String, long[]> entry : offsets.entrySet()) {
+            builder.append(entry.getKey()).append('=').append(Arrays.toString(entry.getValue())).append(", ");
+        }
+        if (!offsets.isEmpty()) builder.setLength(builder.length() - 2);
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,100 @@
+package com.tomandersen.kafka.partitioner;
+
+import org.apache.kafka.clients.producer.internals.DefaultPartitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.utils.Utils;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h3>测试DeviceAffinityPartitioner的哈希与以设备ID为Key时的分配结果一致.</h3>
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see DeviceAffinityPartitioner
+ */
+public class DeviceAffinityPartitionerTest {
+    private static final String TOPIC = "topic_event";
+    private static final int PARTITIONS = 12;
+
+    @Test
+    public void testMurmur2MatchesKafkaOnSubRange() {
+        Random random = new Random(42);
+        for (int length = 0; length <= 64; length++) {
+            byte[] key = new byte[length];
+            random.nextBytes(key);
+            // 在前后填充随机字节,只哈希中间的Key
+            int offset = random.nextInt(8);
+            byte[] data = new byte[offset + length + random.nextInt(8)];
+            random.nextBytes(data);
+            System.arraycopy(key, 0, data, offset, length);
+            assertEquals("length " + length, Utils.murmur2(key), DeviceAffinityPartitioner.murmur2(data, offset, length));
+        }
+    }
+
+    @Test
+    public void testKeylessPlacementMatchesKeyedPlacement() {
+        Cluster cluster = cluster();
+        DeviceAffinityPartitioner partitioner = new DeviceAffinityPartitioner();
+        partitioner.configure(Collections.<String, Object>emptyMap());
+        DefaultPartitioner defaultPartitioner = new DefaultPartitioner();
+        CustomPartitioner customPartitioner = new CustomPartitioner();
+        customPartitioner.configure(Collections.<String, Object>emptyMap());
+        Set<Integer> used = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            String mid = "device-" + i + (i % 3 == 0 ? "-设备" : "");
+            byte[] midBytes = mid.getBytes(StandardCharsets.UTF_8);
+            byte[] value = ("1583769600000|{\"cm\":{\"uid\":\"u\",\"mid\":\"" + mid + "\"},\"et\":[]}")
+                    .getBytes(StandardCharsets.UTF_8);
+            int keyless = partitioner.partition(TOPIC, null, null, null, value, cluster);
+            assertEquals(mid, defaultPartitioner.partition(TOPIC, mid, midBytes, null, value, cluster), keyless);
+            assertEquals(mid, customPartitioner.partition(TOPIC, mid, midBytes, null, value, cluster), keyless);
+            // 带Key发送时按Key哈希
+            assertEquals(keyless, partitioner.partition(TOPIC, mid, midBytes, null, new byte[0], cluster));
+            used.add(keyless);
+        }
+        assertTrue(used.size() > PARTITIONS / 2);
+    }
+
+    @Test
+    public void testConfiguredPathAndMissingDevice() {
+        Cluster cluster = cluster();
+        DeviceAffinityPartitioner partitioner = new DeviceAffinityPartitioner();
+        Map<String, Object> configs = new HashMap<>();
+        configs.put(DeviceAffinityPartitioner.PATH_CONFIG, "device");
+        partitioner.configure(configs);
+        byte[] midBytes = "d1".getBytes(StandardCharsets.UTF_8);
+        int expected = Utils.toPositive(Utils.murmur2(midBytes)) % PARTITIONS;
+        assertEquals(expected, partitioner.partition(TOPIC, null, null, null,
+                "{\"device\":\"d1\"}".getBytes(StandardCharsets.UTF_8), cluster));
+
+        // 找不到设备ID或设备ID为空时使用粘性分配,结果为合法的Partition
+        for (String value : Arrays.asList("{\"cm\":{}}", "{\"device\":\"\"}", "not json")) {
+            int partition = partitioner.partition(TOPIC, null, null, null, value.getBytes(StandardCharsets.UTF_8), cluster);
+            assertTrue(value, partition >= 0 && partition < PARTITIONS);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNonPositiveScanBytes() {
+        new DeviceAffinityPartitioner().configure(
+                Collections.singletonMap(DeviceAffinityPartitioner.MAX_SCAN_BYTES_CONFIG, "0"));
+    }
+
+    private static Cluster cluster() {
+        Node node = new Node(0, "localhost", 9092);
+        List<PartitionInfo> partitions = new ArrayList<>();
+        for (int i = 0; i < PARTITIONS; i++) {
+            partitions.add(new PartitionInfo(TOPIC, i, node, new Node[]{node}, new Node[]{node}));
+        }
+        return new Cluster("cluster", Collections.singletonList(node), partitions,
+                Collections.<String>emptySet(), Collections.<String>emptySet());
+    }
+}
@@ -0,0 +1,126 @@
+package com.tomandersen.kafka.partitioner;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h3>测试JsonPathLocator在原始字节中定位路径的结果及扫描范围.</h3>
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see JsonPathLocator
+ */
+public class JsonPathLocatorTest {
+    private static final JsonPathLocator MID = new JsonPathLocator("cm.mid", 2048);
+
+
+    @Test
+    public void testLocatesNestedPath() {
+        assertEquals("m1", locate(MID, "{\"ap\":\"app\",\"cm\":{\"uid\":\"u1\",\"mid\":\"m1\"},\"et\":[]}"));
+        assertEquals("m1", locate(MID, " { \"cm\" : { \"mid\" : \"m1\" } }"));
+        assertEquals("deep", locate(new JsonPathLocator("a.b.c", 2048), "{\"a\":{\"x\":1,\"b\":{\"c\":\"deep\"}}}"));
+        assertEquals("top", locate(new JsonPathLocator("mid", 2048), "{\"cm\":{\"mid\":\"m1\"},\"mid\":\"top\"}"));
+    }
+
+    @Test
+    public void testSkipsSiblingValuesOfEveryType() {
+        assertEquals("m1", locate(MID, "{\"et\":[{\"cm\":{\"mid\":\"no\"}},\"]}\"],\"n\":-1.5e3,\"b\":true,"
+                + "\"z\":null,\"s\":\"{\\\"cm\\\":1}\",\"cm\":{\"o\":{\"mid\":\"no\"},\"mid\":\"m1\"}}"));
+    }
+
+    @Test
+    public void testMissingPath() {
+        assertNotFound(MID, "{\"cm\":{\"uid\":\"u1\"}}");
+        assertNotFound(MID, "{\"ap\":\"app\"}");
+        // 中间一段不是对象
+        assertNotFound(MID, "{\"cm\":\"m1\"}");
+        assertNotFound(MID, "{\"cm\":[{\"mid\":\"m1\"}]}");
+        assertNotFound(MID, "{}");
+        assertNotFound(MID, "no json");
+        assertNotFound(MID, "");
+        assertEquals(JsonPathLocator.NOT_FOUND, MID.locate(null));
+    }
+
+    @Test
+    public void testEscapedQuotes() {
+        // 字符串中的转义引号不会结束字符串,返回的范围保留原始转义
+        assertEquals("m\\\"1", locate(MID, "{\"cm\":{\"x\":\"a\\\"b,\\\"mid\\\":\\\"no\",\"mid\":\"m\\\"1\"}}"));
+        assertEquals("m1", locate(MID, "{\"cm\":{\"x\":\"\\\\\",\"mid\":\"m1\"}}"));
+        // 带转义字符的Key不等于路径
+        assertNotFound(MID, "{\"cm\":{\"mi\\\"d\":\"m1\"}}");
+    }
+
+    @Test
+    public void testEmptyAndNonStringValues() {
+        long range = MID.locate(bytes("{\"cm\":{\"mid\":\"\"}}"));
+        assertNotEquals(JsonPathLocator.NOT_FOUND, range);
+        assertEquals(JsonPathLocator.start(range), JsonPathLocator.end(range));
+        assertEquals("123", locate(MID, "{\"cm\":{\"mid\":123}}"));
+        assertEquals("null", locate(MID, "{\"cm\":{\"mid\":null }}"));
+        assertEquals("{\"a\":[1,\"}\"]}", locate(MID, "{\"cm\":{\"mid\":{\"a\":[1,\"}\"]}}}"));
+        assertEquals("[1,2]", locate(MID, "{\"cm\":{\"mid\":[1,2]}}"));
+    }
+
+    @Test
+    public void testPrefixIsSkipped() {
+        assertEquals("m1", locate(MID, "1583769600000|{\"cm\":{\"mid\":\"m1\"}}"));
+    }
+
+    @Test
+    public void testTruncatedAtLimit() {
+        String json = "{\"cm\":{\"mid\":\"m1\"}}";
+        // 扫描范围恰好覆盖Value的结尾引号
+        int valueEnd = json.indexOf("m1") + 3;
+        assertEquals("m1", locate(new JsonPathLocator("cm.mid", valueEnd), json));
+        assertNotFound(new JsonPathLocator("cm.mid", valueEnd - 1), json);
+        // 字面量必须在扫描范围内结束
+        String number = "{\"cm\":{\"mid\":12345}}";
+        assertNotFound(new JsonPathLocator("cm.mid", number.indexOf('}')), number);
+        assertEquals("12345", locate(new JsonPathLocator("cm.mid", number.indexOf('}') + 1), number));
+        // 路径之前的成员超出扫描范围
+        String padded = "{\"pad\":\"" + repeat('x', 100) + "\",\"cm\":{\"mid\":\"m1\"}}";
+        assertNotFound(new JsonPathLocator("cm.mid", 64), padded);
+    }
+
+    @Test
+    public void testLimitCountsFromFirstBrace() {
+        String json = "{\"cm\":{\"mid\":\"m1\"}}";
+        JsonPathLocator locator = new JsonPathLocator("cm.mid", json.length());
+        // 前缀不占用JSON本体的扫描范围
+        String prefix = repeat('p', json.length() - 1);
+        assertEquals("m1", locate(locator, prefix + json));
+        // 前缀本身最多查找maxScanBytes个字节
+        assertNotFound(locator, repeat('p', json.length()) + json);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsEmptySegment() {
+        new JsonPathLocator("cm..mid", 2048);
+    }
+
+    private static String locate(JsonPathLocator locator, String json) {
+        byte[] buf = bytes(json);
+        long range = locator.locate(buf);
+        assertNotEquals("Path not found in " + json, JsonPathLocator.NOT_FOUND, range);
+        int start = JsonPathLocator.start(range);
+        return new String(buf, start, JsonPathLocator.end(range) - start, StandardCharsets.UTF_8);
+    }
+
+    private static void assertNotFound(JsonPathLocator locator, String json) {
+        assertEquals(json, JsonPathLocator.NOT_FOUND, locator.locate(bytes(json)));
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) builder.append(c);
+        return builder.toString();
+    }
+}
@@ -0,0 +1,100 @@
+package com.tomandersen.kafka.partitioner;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h3>测试LoadAwarePartitioner切换批次时跳过慢Partition,只按minShare的概率随机选中.</h3>
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see LoadAwarePartitioner
+ */
+public class LoadAwarePartitionerTest {
+    private static final String TOPIC = "load-aware-test";
+    private static final int PARTITIONS = 8;
+    private static final int SLOW = 5;
+    private static final int TRIALS = 40000;
+
+
+    @Test
+    public void testSlowPartitionOnlyChosenAtMinShare() throws Exception {
+        int[] counts = choose("0.1", "slow-share-test:9092");
+        // 慢Partition只在随机选择时被选中,概率为minShare / Partition数
+        double expected = TRIALS * 0.1 / PARTITIONS;
+        assertTrue("slow partition chosen " + counts[SLOW] + " times", counts[SLOW] > expected * 0.6);
+        assertTrue("slow partition chosen " + counts[SLOW] + " times", counts[SLOW] < expected * 1.4);
+        // 随机选择时每个Partition被选中的次数相同,其余次数都分给了非慢Partition
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            if (partition != SLOW) assertTrue(counts[partition] > expected * 0.6);
+        }
+    }
+
+    @Test
+    public void testSlowPartitionSkippedWithoutMinShare() throws Exception {
+        int[] counts = choose("0", "slow-skip-test:9092");
+        assertEquals(0, counts[SLOW]);
+        // 两两比较时负载最高的候选不会被选中,其余非慢Partition都会被选中
+        int chosen = 0;
+        for (int count : counts) if (count > 0) chosen++;
+        assertTrue(chosen >= PARTITIONS - 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsSlowRatioBelowOne() {
+        Map<String, Object> configs = new HashMap<>();
+        configs.put(LoadAwarePartitioner.SLOW_RATIO_CONFIG, "0.5");
+        new LoadAwarePartitioner().configure(configs);
+    }
+
+    // 各Partition的确认延迟相近,SLOW为异步失败的惩罚延迟,统计每个Partition被选中的次数
+    private static int[] choose(String minShare, String servers) throws Exception {
+        Map<String, Object> configs = new HashMap<>();
+        configs.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, servers);
+        configs.put(LoadAwarePartitioner.SLOW_RATIO_CONFIG, "2.0");
+        configs.put(LoadAwarePartitioner.MIN_SHARE_CONFIG, minShare);
+        LoadAwarePartitioner partitioner = new LoadAwarePartitioner();
+        partitioner.configure(configs);
+        PartitionLoadTracker tracker = PartitionLoadTracker.forConfigs(configs);
+
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            PartitionLoadTracker.onSend();
+            tracker.onAssigned(TOPIC, partition, 0);
+        }
+        Thread.sleep(20);
+        ExecutorService io = Executors.newSingleThreadExecutor();
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            int acknowledged = partition;
+            io.submit(() -> tracker.onAcknowledged(TOPIC, acknowledged, acknowledged == SLOW));
+        }
+        io.shutdown();
+        assertTrue(io.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(PartitionLoadTracker.ERROR_PENALTY_MILLS, tracker.latencyMills(TOPIC, SLOW), 0);
+
+        Cluster cluster = cluster();
+        int[] counts = new int[PARTITIONS];
+        for (int i = 0; i < TRIALS; i++) counts[partitioner.chooseByLoad(TOPIC, cluster, -1)]++;
+        return counts;
+    }
+
+    private static Cluster cluster() {
+        Node node = new Node(0, "localhost", 9092);
+        List<PartitionInfo> partitions = new ArrayList<>();
+        for (int i = 0; i < PARTITIONS; i++) {
+            partitions.add(new PartitionInfo(TOPIC, i, node, new Node[]{node}, new Node[]{node}));
+        }
+        return new Cluster("cluster", Collections.singletonList(node), partitions,
+                Collections.<String>emptySet(), Collections.<String>emptySet());
+    }
+}
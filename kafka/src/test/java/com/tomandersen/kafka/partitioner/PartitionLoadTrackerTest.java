@@ -0,0 +1,121 @@
+package com.tomandersen.kafka.partitioner;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h3>测试在途队列的顺序、撤销、容量上限,以及确认与同步失败混合时在途字节数归零.</h3>
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see PartitionLoadTracker
+ */
+public class PartitionLoadTrackerTest {
+    private static final String TOPIC = "load-tracker-test";
+
+
+    @Test
+    public void testPollKeepsOrderAcrossResize() {
+        PartitionLoadTracker.Load load = new PartitionLoadTracker.Load();
+        // 先让队首绕过数组末尾,再扩容两次
+        for (int i = 0; i < 10; i++) assertEquals(i, load.push(i, 1));
+        for (int i = 0; i < 6; i++) assertEquals(i, load.poll());
+        for (int i = 10; i < 100; i++) assertEquals(i, load.push(i, 1));
+        assertEquals(94, load.inFlightBytes);
+        for (int i = 6; i < 100; i++) assertEquals(i, load.poll());
+        assertEquals(-1, load.poll());
+        assertEquals(0, load.inFlightBytes);
+    }
+
+    @Test
+    public void testCancelHeadMiddleAndTail() {
+        PartitionLoadTracker.Load load = new PartitionLoadTracker.Load();
+        for (int i = 0; i < 6; i++) load.push(100 + i, 1L << i);
+        assertEquals(63, load.inFlightBytes);
+
+        // 撤销队首及中间的消息,取出时跳过
+        load.cancel(0);
+        load.cancel(3);
+        assertEquals(63 - 1 - 8, load.inFlightBytes);
+        // 重复撤销及超出范围的序号被忽略
+        load.cancel(3);
+        load.cancel(6);
+        load.cancel(-1);
+        assertEquals(54, load.inFlightBytes);
+
+        // 撤销队尾的消息后队尾回退到最后一条未撤销的消息之后(序号3已撤销),序号被新消息复用
+        load.cancel(5);
+        load.cancel(4);
+        assertEquals(6, load.inFlightBytes);
+        assertEquals(3, load.push(200, 64));
+
+        assertEquals(101, load.poll());
+        assertEquals(102, load.poll());
+        assertEquals(200, load.poll());
+        assertEquals(-1, load.poll());
+        assertEquals(0, load.inFlightBytes);
+
+        // 已取出的消息不能再撤销
+        long sequence = load.push(300, 7);
+        assertEquals(300, load.poll());
+        load.cancel(sequence);
+        assertEquals(0, load.inFlightBytes);
+    }
+
+    @Test
+    public void testOverflowDropsOldest() {
+        PartitionLoadTracker.Load load = new PartitionLoadTracker.Load();
+        int max = PartitionLoadTracker.MAX_IN_FLIGHT_RECORDS;
+        for (int i = 0; i < max + 10; i++) load.push(i, 1);
+        // 超过上限时丢弃最早的消息,在途字节数同步扣除
+        assertEquals(max, load.inFlightBytes);
+        assertEquals(10, load.poll());
+        // 被丢弃的消息无法撤销
+        load.cancel(5);
+        assertEquals(max - 1, load.inFlightBytes);
+        load.cancel(max + 9);
+        assertEquals(max - 2, load.inFlightBytes);
+        for (int i = 11; i < max + 9; i++) assertEquals(i, load.poll());
+        assertEquals(-1, load.poll());
+        assertEquals(0, load.inFlightBytes);
+    }
+
+    @Test
+    public void testInFlightBytesReturnToZeroAfterAcksAndSyncFailures() throws Exception {
+        PartitionLoadTracker tracker = PartitionLoadTracker.forConfigs(
+                Collections.singletonMap(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, "tracker-test:9092"));
+        // 单线程的"I/O线程"按顺序确认,与KafkaProducer中Sender线程的角色相同
+        ExecutorService io = Executors.newSingleThreadExecutor();
+        int acknowledged = 0;
+        for (int i = 0; i < 1000; i++) {
+            int partition = i % 3;
+            PartitionLoadTracker.onSend();
+            tracker.onAssigned(TOPIC, partition, 10 + i % 7);
+            if (i % 5 == 0) {
+                // 发送线程中同步失败(例如消息过大),撤销刚分配的消息
+                tracker.onAcknowledged(TOPIC, partition, true);
+            } else {
+                // 其余消息由I/O线程确认,部分为异步失败
+                boolean failed = i % 11 == 0;
+                io.submit(() -> tracker.onAcknowledged(TOPIC, partition, failed));
+                acknowledged++;
+            }
+        }
+        io.shutdown();
+        assertTrue(io.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(800, acknowledged);
+        for (int partition = 0; partition < 3; partition++) {
+            assertEquals(0, tracker.inFlightBytes(TOPIC, partition));
+            // 异步失败按惩罚延迟计入
+            assertTrue(tracker.latencyMills(TOPIC, partition) > 0);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.tomandersen.kafka.util;
+
+import kafka.server.KafkaConfig;
+import kafka.server.KafkaServerStartable;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.common.utils.Exit;
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * <h3>测试使用的内嵌Kafka集群.</h3>
+ * 在本机随机端口上启动一个ZooKeeper以及指定个数的Broker,Broker的id即其下标,数据目录在关闭时删除.
+ * Broker启动失败时默认会退出JVM,这里改为抛出异常.
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ */
+class EmbeddedKafkaCluster implements AutoCloseable {
+    static {
+        Exit.setExitProcedure((statusCode, message) -> {
+            throw new IllegalStateException("Embedded broker exited with status " + statusCode + ": " + message);
+        });
+    }
+
+    private final File root;
+    private final ServerCnxnFactory zookeeper;
+    private final List<KafkaServerStartable> brokers = new ArrayList<>();
+    private final boolean[] running;
+    private final String bootstrapServers;
+
+
+    EmbeddedKafkaCluster(int brokerCount) throws IOException, InterruptedException {
+        root = Files.createTempDirectory("embedded-kafka").toFile();
+        File zkDir = new File(root, "zookeeper");
+        zookeeper = ServerCnxnFactory.createFactory(new InetSocketAddress("127.0.0.1", 0), 100);
+        zookeeper.startup(new ZooKeeperServer(zkDir, zkDir, 2000));
+
+        running = new boolean[brokerCount];
+        StringBuilder servers = new StringBuilder();
+        for (int id = 0; id < brokerCount; id++) {
+            int port = freePort();
+            Properties props = new Properties();
+            props.put("broker.id", String.valueOf(id));
+            props.put("zookeeper.connect", "127.0.0.1:" + zookeeper.getLocalPort());
+            props.put("listeners", "PLAINTEXT://127.0.0.1:" + port);
+            props.put("log.dirs", new File(root, "broker-" + id).getAbsolutePath());
+            props.put("offsets.topic.replication.factor", String.valueOf(Math.min(brokerCount, 3)));
+            props.put("offsets.topic.num.partitions", "1");
+            props.put("group.initial.rebalance.delay.ms", "0");
+            props.put("auto.create.topics.enable", "false");
+            KafkaServerStartable broker = new KafkaServerStartable(KafkaConfig.fromProps(props));
+            broker.startup();
+            brokers.add(broker);
+            running[id] = true;
+            if (servers.length() > 0) servers.append(',');
+            servers.append("127.0.0.1:").append(port);
+        }
+        bootstrapServers = servers.toString();
+    }
+
+    /**
+     * ZooKeeper 3.4的客户端依赖InetSocketAddress.toString()的格式解析连接地址,JDK 14之后格式改变,
+     * 客户端无法连接(ZOOKEEPER-3779),此时无法启动内嵌Broker
+     */
+    static boolean isSupported() {
+        return !InetSocketAddress.createUnresolved("127.0.0.1", 2181).toString().contains("<unresolved>");
+    }
+
+    String bootstrapServers() {
+        return bootstrapServers;
+    }
+
+    void createTopic(String topic, int partitions, int replicationFactor) throws Exception {
+        Map<String, Object> config = Collections.singletonMap(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        try (AdminClient admin = AdminClient.create(config)) {
+            admin.createTopics(Collections.singleton(new NewTopic(topic, partitions, (short) replicationFactor))).all().get();
+        }
+    }
+
+    /**
+     * 正常关闭指定的Broker,其作为Leader的Partition由Controller迁移到其他副本
+     */
+    void stopBroker(int id) {
+        if (!running[id]) return;
+        running[id] = false;
+        brokers.get(id).shutdown();
+        brokers.get(id).awaitShutdown();
+    }
+
+    @Override
+    public void close() {
+        for (int id = 0; id < brokers.size(); id++) stopBroker(id);
+        zookeeper.shutdown();
+        delete(root);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) for (File child : children) delete(child);
+        file.delete();
+    }
+}
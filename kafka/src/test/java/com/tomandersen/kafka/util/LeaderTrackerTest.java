@@ -0,0 +1,102 @@
+package com.tomandersen.kafka.util;
+
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * <h3>在内嵌的两个Broker上迁移Leader,测试LeaderTracker能够发现变化.</h3>
+ *
+ * @author TomAndersen
+ * @version 1.0
+ * @date 2026/10/19
+ * @see LeaderTracker
+ */
+public class LeaderTrackerTest {
+    private static final String TOPIC = "leader-tracker-test";
+    private static final TopicPartition PARTITION = new TopicPartition(TOPIC, 0);
+
+    private EmbeddedKafkaCluster cluster;
+    private KafkaMetadataClient client;
+    private LeaderTracker tracker;
+    private final BlockingQueue<Node[]> leaderChanges = new LinkedBlockingQueue<>();
+
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue("Embedded ZooKeeper 3.4 is not supported on this JDK", EmbeddedKafkaCluster.isSupported());
+        cluster = new EmbeddedKafkaCluster(2);
+        cluster.createTopic(TOPIC, 1, 2);
+        client = new KafkaMetadataClient(cluster.bootstrapServers());
+        tracker = new LeaderTracker(client);
+        tracker.addListener((partition, oldLeader, newLeader) -> leaderChanges.add(new Node[]{oldLeader, newLeader}));
+    }
+
+    @After
+    public void tearDown() {
+        if (tracker != null) tracker.close();
+        if (client != null) client.close();
+        if (cluster != null) cluster.close();
+    }
+
+    @Test
+    public void testCheckReportsMovedLeader() throws Exception {
+        Node oldLeader = awaitLeader();
+        // 拉取模式下第一次检查只记录状态
+        assertTrue(tracker.check(TOPIC).isEmpty());
+
+        cluster.stopBroker(oldLeader.id());
+        Node newLeader = tracker.awaitNewLeader(PARTITION, oldLeader);
+        assertNotEquals(oldLeader.id(), newLeader.id());
+
+        // awaitNewLeader内部的检查已经通知过Listener,再次检查不会重复通知
+        Node[] change = leaderChanges.poll(0, TimeUnit.MILLISECONDS);
+        assertNotNull(change);
+        assertEquals(oldLeader.id(), change[0].id());
+        assertEquals(newLeader.id(), change[1].id());
+        assertTrue(tracker.check(TOPIC).isEmpty());
+        assertTrue(leaderChanges.isEmpty());
+    }
+
+    @Test
+    public void testScheduledCheckNotifiesListener() throws Exception {
+        Node oldLeader = awaitLeader();
+        tracker.start(Collections.singletonList(TOPIC), 100);
+        // 等待周期检查记录当前状态后再迁移Leader
+        Thread.sleep(500);
+
+        cluster.stopBroker(oldLeader.id());
+        Node[] change = leaderChanges.poll(30, TimeUnit.SECONDS);
+        assertNotNull("Leader change was not detected by the scheduled check", change);
+        assertEquals(oldLeader.id(), change[0].id());
+        assertNotNull(change[1]);
+        assertNotEquals(oldLeader.id(), change[1].id());
+        assertEquals(change[1].id(), tracker.currentLeader(PARTITION).id());
+    }
+
+    // 新建的Topic需要一段时间才能选出Leader并在元数据中可见
+    private Node awaitLeader() throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            tracker.check(TOPIC);
+            Node leader = tracker.currentLeader(PARTITION);
+            if (leader != null) {
+                // 从没有Leader到选出Leader同样会通知Listener,不计入迁移
+                leaderChanges.clear();
+                return leader;
+            }
+            Thread.sleep(100);
+        }
+        fail("No leader elected for " + PARTITION);
+        return null;
+    }
+}